@@ -0,0 +1,138 @@
+package com.coconut_palm_software.possible.iterable;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the kernels {@link PrimitiveArrays} loaded, the Vector API ones when
+ * the JVM runs with --add-modules jdk.incubator.vector, against the
+ * {@link ScalarKernels} fallback.  The small size fits in cache, so the loop shape
+ * limits throughput; the large size shows where memory bandwidth takes over.
+ * firstIndexOf searches for a value that isn't present, so it scans every element.
+ * <p>
+ * Build with <code>mvn -Pbenchmark,vector package</code>, then run
+ * org.openjdk.jmh.Main with target/classes and the JMH jars on the classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class PrimitiveArraysBenchmark {
+
+    @Param({ "8192", "4194304" })
+    int size;
+
+    int[] ints;
+    long[] longs;
+    double[] doubles;
+
+    final PrimitiveKernels loaded = PrimitiveArrays.KERNELS;
+    final PrimitiveKernels scalar = new ScalarKernels();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        ints = new int[size];
+        longs = new long[size];
+        doubles = new double[size];
+        for (int i = 0; i < size; i++) {
+            ints[i] = random.nextInt(1000);
+            longs[i] = random.nextLong();
+            doubles[i] = random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public long intSum() {
+        return loaded.sum(ints);
+    }
+
+    @Benchmark
+    public long intSumScalar() {
+        return scalar.sum(ints);
+    }
+
+    @Benchmark
+    public int intMax() {
+        return loaded.max(ints);
+    }
+
+    @Benchmark
+    public int intMaxScalar() {
+        return scalar.max(ints);
+    }
+
+    @Benchmark
+    public int intFirstIndexOf() {
+        return loaded.firstIndexOf(ints, -1);
+    }
+
+    @Benchmark
+    public int intFirstIndexOfScalar() {
+        return scalar.firstIndexOf(ints, -1);
+    }
+
+    @Benchmark
+    public long longSum() {
+        return loaded.sum(longs);
+    }
+
+    @Benchmark
+    public long longSumScalar() {
+        return scalar.sum(longs);
+    }
+
+    @Benchmark
+    public long longMax() {
+        return loaded.max(longs);
+    }
+
+    @Benchmark
+    public long longMaxScalar() {
+        return scalar.max(longs);
+    }
+
+    @Benchmark
+    public double doubleSum() {
+        return loaded.sum(doubles);
+    }
+
+    @Benchmark
+    public double doubleSumScalar() {
+        return scalar.sum(doubles);
+    }
+
+    @Benchmark
+    public double doubleMin() {
+        return loaded.min(doubles);
+    }
+
+    @Benchmark
+    public double doubleMinScalar() {
+        return scalar.min(doubles);
+    }
+
+    @Benchmark
+    public int doubleFirstIndexOf() {
+        return loaded.firstIndexOf(doubles, -1.0);
+    }
+
+    @Benchmark
+    public int doubleFirstIndexOfScalar() {
+        return scalar.firstIndexOf(doubles, -1.0);
+    }
+}
@@ -0,0 +1,213 @@
+package com.coconut_palm_software.possible.iterable;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link PrimitiveKernels} built on the jdk.incubator.vector API, using the CPU's
+ * preferred vector width.  Each loop processes whole vectors and finishes the
+ * remaining elements with scalar code.  Loaded reflectively by
+ * {@link PrimitiveArrays}, so this class is only linked when the module is present.
+ */
+final class VectorKernels implements PrimitiveKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    VectorKernels() {
+        if (INTS.vectorBitSize() < 128) {
+            throw new UnsupportedOperationException("Vectors are too narrow to help: " + INTS);
+        }
+    }
+
+    @Override
+    public long sum(int[] a) {
+        LongVector sums = LongVector.zero(LONGS);
+        int i = 0;
+        for (int bound = INTS.loopBound(a.length); i < bound; i += INTS.length()) {
+            IntVector v = IntVector.fromArray(INTS, a, i);
+            // Widen each half to longs so the running sums cannot overflow
+            sums = sums.add((LongVector) v.convertShape(VectorOperators.I2L, LONGS, 0))
+                       .add((LongVector) v.convertShape(VectorOperators.I2L, LONGS, 1));
+        }
+        long sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public int min(int[] a) {
+        IntVector mins = IntVector.broadcast(INTS, a[0]);
+        int i = 0;
+        for (int bound = INTS.loopBound(a.length); i < bound; i += INTS.length()) {
+            mins = mins.min(IntVector.fromArray(INTS, a, i));
+        }
+        int m = mins.reduceLanes(VectorOperators.MIN);
+        for (; i < a.length; i++) {
+            m = Math.min(m, a[i]);
+        }
+        return m;
+    }
+
+    @Override
+    public int max(int[] a) {
+        IntVector maxes = IntVector.broadcast(INTS, a[0]);
+        int i = 0;
+        for (int bound = INTS.loopBound(a.length); i < bound; i += INTS.length()) {
+            maxes = maxes.max(IntVector.fromArray(INTS, a, i));
+        }
+        int m = maxes.reduceLanes(VectorOperators.MAX);
+        for (; i < a.length; i++) {
+            m = Math.max(m, a[i]);
+        }
+        return m;
+    }
+
+    @Override
+    public int firstIndexOf(int[] a, int value) {
+        int i = 0;
+        for (int bound = INTS.loopBound(a.length); i < bound; i += INTS.length()) {
+            VectorMask<Integer> matches = IntVector.fromArray(INTS, a, i).eq(value);
+            if (matches.anyTrue()) {
+                return i + matches.firstTrue();
+            }
+        }
+        for (; i < a.length; i++) {
+            if (a[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long sum(long[] a) {
+        LongVector sums = LongVector.zero(LONGS);
+        int i = 0;
+        for (int bound = LONGS.loopBound(a.length); i < bound; i += LONGS.length()) {
+            sums = sums.add(LongVector.fromArray(LONGS, a, i));
+        }
+        long sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public long min(long[] a) {
+        LongVector mins = LongVector.broadcast(LONGS, a[0]);
+        int i = 0;
+        for (int bound = LONGS.loopBound(a.length); i < bound; i += LONGS.length()) {
+            mins = mins.min(LongVector.fromArray(LONGS, a, i));
+        }
+        long m = mins.reduceLanes(VectorOperators.MIN);
+        for (; i < a.length; i++) {
+            m = Math.min(m, a[i]);
+        }
+        return m;
+    }
+
+    @Override
+    public long max(long[] a) {
+        LongVector maxes = LongVector.broadcast(LONGS, a[0]);
+        int i = 0;
+        for (int bound = LONGS.loopBound(a.length); i < bound; i += LONGS.length()) {
+            maxes = maxes.max(LongVector.fromArray(LONGS, a, i));
+        }
+        long m = maxes.reduceLanes(VectorOperators.MAX);
+        for (; i < a.length; i++) {
+            m = Math.max(m, a[i]);
+        }
+        return m;
+    }
+
+    @Override
+    public int firstIndexOf(long[] a, long value) {
+        int i = 0;
+        for (int bound = LONGS.loopBound(a.length); i < bound; i += LONGS.length()) {
+            VectorMask<Long> matches = LongVector.fromArray(LONGS, a, i).eq(value);
+            if (matches.anyTrue()) {
+                return i + matches.firstTrue();
+            }
+        }
+        for (; i < a.length; i++) {
+            if (a[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public double sum(double[] a) {
+        DoubleVector sums = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(a.length); i < bound; i += DOUBLES.length()) {
+            sums = sums.add(DoubleVector.fromArray(DOUBLES, a, i));
+        }
+        double sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public double min(double[] a) {
+        // Lanewise MIN follows Math.min, so NaN wins and -0.0 is below 0.0
+        DoubleVector mins = DoubleVector.broadcast(DOUBLES, a[0]);
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(a.length); i < bound; i += DOUBLES.length()) {
+            mins = mins.min(DoubleVector.fromArray(DOUBLES, a, i));
+        }
+        double m = mins.reduceLanes(VectorOperators.MIN);
+        for (; i < a.length; i++) {
+            m = Math.min(m, a[i]);
+        }
+        return m;
+    }
+
+    @Override
+    public double max(double[] a) {
+        DoubleVector maxes = DoubleVector.broadcast(DOUBLES, a[0]);
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(a.length); i < bound; i += DOUBLES.length()) {
+            maxes = maxes.max(DoubleVector.fromArray(DOUBLES, a, i));
+        }
+        double m = maxes.reduceLanes(VectorOperators.MAX);
+        for (; i < a.length; i++) {
+            m = Math.max(m, a[i]);
+        }
+        return m;
+    }
+
+    @Override
+    public int firstIndexOf(double[] a, double value) {
+        boolean nan = Double.isNaN(value);
+        long bits = Double.doubleToLongBits(value);
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(a.length); i < bound; i += DOUBLES.length()) {
+            DoubleVector v = DoubleVector.fromArray(DOUBLES, a, i);
+            // Every NaN matches NaN, as Double.compare does; other values match bit for bit
+            VectorMask<?> matches = nan
+                    ? v.test(VectorOperators.IS_NAN)
+                    : v.reinterpretAsLongs().eq(bits);
+            if (matches.anyTrue()) {
+                return i + matches.firstTrue();
+            }
+        }
+        for (; i < a.length; i++) {
+            if (Double.doubleToLongBits(a[i]) == bits) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
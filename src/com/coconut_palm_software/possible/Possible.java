@@ -41,6 +41,10 @@ import com.coconut_palm_software.possible.iterable.F;
  * <p>
  * This pattern makes explicit that a method might not return a value, eliminating
  * guesswork about if the method might return null when reading/learning APIs.
+ * <p>
+ * Possible values have value semantics: two values are equal if their contents are
+ * equal, and all empty values are equal to each other.  Status objects are not
+ * compared.  This lets a Possible be used directly as a Map key or Set element.
  *
  * @param <T> The type the Possible encapsulates
  */
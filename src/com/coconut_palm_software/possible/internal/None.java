@@ -137,4 +137,30 @@ public final class None<T> extends Possible<T> {
     public <R> Possible<R> apply(F<T, R> f) {
         return Possible.emptyValue();
     }
+
+    /**
+     * All Nones are equal, regardless of their status.
+     *
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof None;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return 0;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "None";
+    }
 }
\ No newline at end of file
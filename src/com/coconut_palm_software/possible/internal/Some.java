@@ -25,6 +25,7 @@ import com.coconut_palm_software.possible.iterable.F;
 public final class Some<T> extends Possible<T> {
     private final T value;
     private Object status = null;
+    private int hash = 0;    // cached; 0 until computed
 
     public Some(T value) {
     	Nulls.assertNotNull(value, "value");
@@ -158,5 +159,45 @@ public final class Some<T> extends Possible<T> {
     public <R> Possible<R> apply(F<T, R> f) {
         return Possible.value(f.apply(value));
     }
+
+	/**
+	 * Two Somes are equal if their values are equal.  The status is not compared.
+	 *
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof Some)) {
+			return false;
+		}
+		return value.equals(((Some<?>) obj).value);
+	}
+
+	/**
+	 * The hash is computed from the value on first use and cached, so the value's
+	 * hashCode must not change while this Some is in use as a key.
+	 *
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if (h == 0) {
+			h = 31 + value.hashCode();
+			hash = h;
+		}
+		return h;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "Some(" + value + ")";
+	}
 }
 
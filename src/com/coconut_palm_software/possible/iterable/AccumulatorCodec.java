@@ -0,0 +1,16 @@
+package com.coconut_palm_software.possible.iterable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads a reduce accumulator so that a {@link Checkpoint} can persist it.
+ *
+ * @param <A> The accumulator type
+ */
+public interface AccumulatorCodec<A> {
+    void write(A accumulator, DataOutput out) throws IOException;
+
+    A read(DataInput in) throws IOException;
+}
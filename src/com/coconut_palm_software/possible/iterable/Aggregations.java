@@ -0,0 +1,110 @@
+package com.coconut_palm_software.possible.iterable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash aggregation tables behind FluentIterable's groupBy and countBy.  Each table
+ * keys a {@link KeyIndex} and keeps per-key state in arrays indexed by key id.
+ * Tables built over separate chunks of a source can be merged; keys keep the order
+ * in which they were first seen.
+ */
+final class Aggregations {
+    private Aggregations() {}
+
+    static final class Groups<K, R> {
+        private final KeyIndex index = new KeyIndex();
+        private Object[] groups = new Object[16];
+        long elements = 0;
+
+        @SuppressWarnings("unchecked")
+        private List<R> group(int id) {
+            return (List<R>) groups[id];
+        }
+
+        private int groupId(Object key) {
+            int id = index.addOrFind(key);
+            if (id < 0) {
+                id = ~id;
+                if (id == groups.length) {
+                    Object[] newGroups = new Object[groups.length * 2];
+                    System.arraycopy(groups, 0, newGroups, 0, id);
+                    groups = newGroups;
+                }
+                groups[id] = new ArrayList<R>();
+            }
+            return id;
+        }
+
+        void addAll(Iterable<R> source, F<R, K> keyFunction) {
+            for (R element : source) {
+                group(groupId(keyFunction.apply(element))).add(element);
+                ++elements;
+            }
+        }
+
+        void merge(Groups<K, R> other) {
+            for (int otherId = 0; otherId < other.index.size(); otherId++) {
+                group(groupId(other.index.key(otherId))).addAll(other.group(otherId));
+            }
+            elements += other.elements;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<K, List<R>> toMap() {
+            LinkedHashMap<K, List<R>> result =
+                    CollectionFactory.linkedHashMapWithExpectedSize(index.size());
+            for (int id = 0; id < index.size(); id++) {
+                result.put((K) index.key(id), group(id));
+            }
+            return result;
+        }
+    }
+
+    static final class Counts<K, R> {
+        private final KeyIndex index = new KeyIndex();
+        private long[] counts = new long[16];
+        long elements = 0;
+
+        private int countId(Object key) {
+            int id = index.addOrFind(key);
+            if (id < 0) {
+                id = ~id;
+                if (id == counts.length) {
+                    long[] newCounts = new long[counts.length * 2];
+                    System.arraycopy(counts, 0, newCounts, 0, id);
+                    counts = newCounts;
+                }
+            }
+            return id;
+        }
+
+        void addAll(Iterable<R> source, F<R, K> keyFunction) {
+            for (R element : source) {
+                int id = countId(keyFunction.apply(element));
+                ++counts[id];
+                ++elements;
+            }
+        }
+
+        void merge(Counts<K, R> other) {
+            for (int otherId = 0; otherId < other.index.size(); otherId++) {
+                int id = countId(other.index.key(otherId));
+                counts[id] += other.counts[otherId];
+            }
+            elements += other.elements;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<K, Long> toMap() {
+            LinkedHashMap<K, Long> result =
+                    CollectionFactory.linkedHashMapWithExpectedSize(index.size());
+            for (int id = 0; id < index.size(); id++) {
+                result.put((K) index.key(id), counts[id]);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.coconut_palm_software.possible.iterable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.coconut_palm_software.possible.Nulls;
+
+/**
+ * A binary min-heap that retains only the k best elements offered to it, where the
+ * root is the worst element retained.  Selecting k of n elements takes O(n log k)
+ * time and O(min(k, n)) memory; storage grows on demand, so a huge k costs nothing
+ * until that many elements have been offered.  Heaps filled from separate chunks
+ * of a source are combined with {@link #merge(BoundedHeap)}.
+ * <p>
+ * The primitive-keyed variants compute each element's score once and compare
+ * unboxed scores.
+ *
+ * @param <T> The element type
+ */
+abstract class BoundedHeap<T> {
+    final int k;
+    int size = 0;
+    Object[] elements;
+    long offered = 0;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    BoundedHeap(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("'k' cannot be negative");
+        }
+        this.k = k;
+        this.elements = new Object[initialCapacity(k)];
+    }
+
+    static int initialCapacity(int k) {
+        return Math.min(k, INITIAL_CAPACITY);
+    }
+
+    /**
+     * Make room for one more element while size < k, doubling storage up to k.
+     */
+    void ensureRoom() {
+        if (size == elements.length) {
+            grow((int) Math.min(k, 2L * elements.length));
+        }
+    }
+
+    /**
+     * Resize storage to newCapacity; subclasses with parallel key arrays extend this.
+     */
+    void grow(int newCapacity) {
+        elements = Arrays.copyOf(elements, newCapacity);
+    }
+
+    /**
+     * @return a new, empty heap with the same k and ordering.
+     */
+    abstract BoundedHeap<T> newEmpty();
+
+    /**
+     * Offer t, retaining it if it is among the k best elements seen so far.
+     */
+    abstract void offer(T t);
+
+    /**
+     * Offer every element retained by other.
+     */
+    abstract void merge(BoundedHeap<T> other);
+
+    /* Return true if the element at i is worse than the element at j */
+    abstract boolean worse(int i, int j);
+
+    abstract void swap(int i, int j);
+
+    void offerAll(Iterable<T> source) {
+        for (T t : source) {
+            offer(t);
+            ++offered;
+        }
+    }
+
+    void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(i, parent)) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && worse(child + 1, child)) {
+                ++child;
+            }
+            if (!worse(child, i)) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    /**
+     * Drain the heap, returning its elements best first.
+     */
+    @SuppressWarnings("unchecked")
+    List<T> drainBestFirst() {
+        Object[] result = new Object[size];
+        while (size > 0) {
+            result[size - 1] = elements[0];
+            swap(0, size - 1);
+            --size;
+            siftDown(0);
+        }
+        List<T> list = new ArrayList<T>(result.length);
+        for (Object element : result) {
+            list.add((T) element);
+        }
+        return list;
+    }
+
+    /**
+     * Ranks elements using a Comparator; larger elements are better.
+     */
+    static final class OfComparator<T> extends BoundedHeap<T> {
+        private final Comparator<? super T> comparator;
+
+        OfComparator(int k, Comparator<? super T> comparator) {
+            super(k);
+            Nulls.assertNotNull(comparator, "comparator");
+            this.comparator = comparator;
+        }
+
+        @Override
+        BoundedHeap<T> newEmpty() {
+            return new OfComparator<T>(k, comparator);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        boolean worse(int i, int j) {
+            return comparator.compare((T) elements[i], (T) elements[j]) < 0;
+        }
+
+        @Override
+        void swap(int i, int j) {
+            Object element = elements[i];
+            elements[i] = elements[j];
+            elements[j] = element;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void offer(T t) {
+            if (size < k) {
+                ensureRoom();
+                elements[size] = t;
+                siftUp(size++);
+            } else if (k > 0 && comparator.compare(t, (T) elements[0]) > 0) {
+                elements[0] = t;
+                siftDown(0);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        void merge(BoundedHeap<T> other) {
+            for (int i = 0; i < other.size; i++) {
+                offer((T) other.elements[i]);
+            }
+            offered += other.offered;
+        }
+    }
+
+    /**
+     * Ranks elements by a double score; higher scores are better.
+     */
+    static final class OfDouble<T> extends BoundedHeap<T> {
+        private final DoubleF<T> score;
+        private double[] keys;
+
+        OfDouble(int k, DoubleF<T> score) {
+            super(k);
+            Nulls.assertNotNull(score, "score");
+            this.score = score;
+            this.keys = new double[initialCapacity(k)];
+        }
+
+        @Override
+        void grow(int newCapacity) {
+            super.grow(newCapacity);
+            keys = Arrays.copyOf(keys, newCapacity);
+        }
+
+        @Override
+        BoundedHeap<T> newEmpty() {
+            return new OfDouble<T>(k, score);
+        }
+
+        @Override
+        boolean worse(int i, int j) {
+            return Double.compare(keys[i], keys[j]) < 0;
+        }
+
+        @Override
+        void swap(int i, int j) {
+            Object element = elements[i];
+            elements[i] = elements[j];
+            elements[j] = element;
+            double key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+
+        @Override
+        void offer(T t) {
+            offer(t, score.apply(t));
+        }
+
+        private void offer(Object t, double key) {
+            if (size < k) {
+                ensureRoom();
+                elements[size] = t;
+                keys[size] = key;
+                siftUp(size++);
+            } else if (k > 0 && Double.compare(key, keys[0]) > 0) {
+                elements[0] = t;
+                keys[0] = key;
+                siftDown(0);
+            }
+        }
+
+        @Override
+        void merge(BoundedHeap<T> other) {
+            OfDouble<T> that = (OfDouble<T>) other;
+            for (int i = 0; i < that.size; i++) {
+                offer(that.elements[i], that.keys[i]);
+            }
+            offered += other.offered;
+        }
+    }
+
+    /**
+     * Ranks elements by a long score; higher scores are better.
+     */
+    static final class OfLong<T> extends BoundedHeap<T> {
+        private final LongF<T> score;
+        private long[] keys;
+
+        OfLong(int k, LongF<T> score) {
+            super(k);
+            Nulls.assertNotNull(score, "score");
+            this.score = score;
+            this.keys = new long[initialCapacity(k)];
+        }
+
+        @Override
+        void grow(int newCapacity) {
+            super.grow(newCapacity);
+            keys = Arrays.copyOf(keys, newCapacity);
+        }
+
+        @Override
+        BoundedHeap<T> newEmpty() {
+            return new OfLong<T>(k, score);
+        }
+
+        @Override
+        boolean worse(int i, int j) {
+            return keys[i] < keys[j];
+        }
+
+        @Override
+        void swap(int i, int j) {
+            Object element = elements[i];
+            elements[i] = elements[j];
+            elements[j] = element;
+            long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+
+        @Override
+        void offer(T t) {
+            offer(t, score.apply(t));
+        }
+
+        private void offer(Object t, long key) {
+            if (size < k) {
+                ensureRoom();
+                elements[size] = t;
+                keys[size] = key;
+                siftUp(size++);
+            } else if (k > 0 && key > keys[0]) {
+                elements[0] = t;
+                keys[0] = key;
+                siftDown(0);
+            }
+        }
+
+        @Override
+        void merge(BoundedHeap<T> other) {
+            OfLong<T> that = (OfLong<T>) other;
+            for (int i = 0; i < that.size; i++) {
+                offer(that.elements[i], that.keys[i]);
+            }
+            offered += other.offered;
+        }
+    }
+}
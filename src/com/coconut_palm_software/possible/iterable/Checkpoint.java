@@ -0,0 +1,221 @@
+package com.coconut_palm_software.possible.iterable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import com.coconut_palm_software.possible.Nulls;
+import com.coconut_palm_software.possible.Possible;
+
+/**
+ * Configures a checkpointed reduce: where snapshots of the accumulator and source
+ * position are written, how the accumulator is encoded, and how often snapshots are
+ * taken.  See {@link FluentIterable#reduce(F2, Object, Checkpoint)}.
+ * <p>
+ * <code>
+ *	Checkpoint&lt;Long&gt; checkpoint = Checkpoint.to(new File("totals.ckpt"), LONG_CODEC)
+ *			.everyElements(10000000)
+ *			.everyMillis(60000);
+ * </code>
+ * <p>
+ * Snapshots are written to a temporary file, synced, and then atomically moved over
+ * the previous snapshot, so a crash while writing leaves the previous snapshot
+ * intact.  If the file system cannot replace the snapshot atomically, the write
+ * fails rather than risk losing it.
+ * When time-based checkpoints are enabled, the clock is read once per 1024 elements.
+ *
+ * @param <A> The accumulator type
+ */
+public final class Checkpoint<A> {
+    private static final int MAGIC = 0x46434B50;    // "FCKP"
+    static final int CLOCK_CHECK_INTERVAL = 1024;
+
+    private final File file;
+    private final AccumulatorCodec<A> codec;
+    private final long everyElements;
+    private final long everyMillis;
+
+    private Checkpoint(File file, AccumulatorCodec<A> codec, long everyElements, long everyMillis) {
+        this.file = file;
+        this.codec = codec;
+        this.everyElements = everyElements;
+        this.everyMillis = everyMillis;
+    }
+
+    /**
+     * Checkpoint to file using codec.  By default a snapshot is taken every
+     * 1,000,000 elements.
+     *
+     * @param file The snapshot file.
+     * @param codec Encodes the accumulator.
+     * @param <A> The accumulator type.
+     * @return a new Checkpoint.
+     */
+    public static <A> Checkpoint<A> to(File file, AccumulatorCodec<A> codec) {
+        Nulls.assertNotNull(file, "file");
+        Nulls.assertNotNull(codec, "codec");
+        return new Checkpoint<A>(file, codec, 1000000, 0);
+    }
+
+    /**
+     * Checkpoint a Serializable accumulator to file using Java serialization.
+     *
+     * @param file The snapshot file.
+     * @param <A> The accumulator type.
+     * @return a new Checkpoint.
+     */
+    public static <A extends Serializable> Checkpoint<A> to(File file) {
+        return to(file, Checkpoint.<A>serializableCodec());
+    }
+
+    /**
+     * @param <A> The accumulator type.
+     * @return an AccumulatorCodec that uses Java serialization.
+     */
+    public static <A extends Serializable> AccumulatorCodec<A> serializableCodec() {
+        return new AccumulatorCodec<A>() {
+            @Override
+            public void write(A accumulator, DataOutput out) throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream objects = new ObjectOutputStream(bytes);
+                objects.writeObject(accumulator);
+                objects.close();
+                out.writeInt(bytes.size());
+                out.write(bytes.toByteArray());
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public A read(DataInput in) throws IOException {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                try {
+                    return (A) objects.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Could not deserialize accumulator", e);
+                } finally {
+                    objects.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * @param elements Take a snapshot after this many elements, or 0 to disable.
+     * @return a copy of this Checkpoint with the element interval changed.
+     */
+    public Checkpoint<A> everyElements(long elements) {
+        if (elements < 0) {
+            throw new IllegalArgumentException("'elements' cannot be negative");
+        }
+        return new Checkpoint<A>(file, codec, elements, everyMillis);
+    }
+
+    /**
+     * @param millis Take a snapshot after this much time, or 0 to disable.
+     * @return a copy of this Checkpoint with the time interval changed.
+     */
+    public Checkpoint<A> everyMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("'millis' cannot be negative");
+        }
+        return new Checkpoint<A>(file, codec, everyElements, millis);
+    }
+
+    long everyElements() {
+        return everyElements;
+    }
+
+    long everyMillis() {
+        return everyMillis;
+    }
+
+    /**
+     * A snapshot read back from the checkpoint file.
+     */
+    static final class Snapshot<A> {
+        final long position;
+        final A accumulator;
+
+        Snapshot(long position, A accumulator) {
+            this.position = position;
+            this.accumulator = accumulator;
+        }
+    }
+
+    /**
+     * Read the latest snapshot, if there is one.
+     */
+    Possible<Snapshot<A>> read() {
+        if (!file.exists()) {
+            return Possible.emptyValue();
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IllegalStateException("Not a checkpoint file: " + file);
+                }
+                long position = in.readLong();
+                return Possible.value(new Snapshot<A>(position, codec.read(in)));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read checkpoint: " + file, e);
+        }
+    }
+
+    /**
+     * Atomically replace the snapshot with (position, accumulator).
+     */
+    void write(long position, A accumulator) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            FileOutputStream fileOut = new FileOutputStream(temp);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            try {
+                out.writeInt(MAGIC);
+                out.writeLong(position);
+                codec.write(accumulator, out);
+                out.flush();
+                fileOut.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw new IllegalStateException("Could not write checkpoint: " + file, e);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Includes AtomicMoveNotSupportedException; the previous snapshot is untouched
+            temp.delete();
+            throw new IllegalStateException("Could not replace checkpoint: " + file, e);
+        }
+    }
+
+    /**
+     * Delete the snapshot once the reduce has completed.
+     */
+    void delete() {
+        file.delete();
+    }
+}
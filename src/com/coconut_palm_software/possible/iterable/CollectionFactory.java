@@ -1,19 +1,39 @@
 package com.coconut_palm_software.possible.iterable;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.Set;
 
+import com.coconut_palm_software.possible.iterable.persistent.PersistentHashMap;
+import com.coconut_palm_software.possible.iterable.persistent.PersistentHashSet;
+import com.coconut_palm_software.possible.iterable.persistent.PersistentVector;
+
 public class CollectionFactory {
     public static <T> LinkedList<T> linkedList(T...ts) {
+        return new LinkedList<T>(Arrays.asList(ts));
+    }
+
+    public static <T> LinkedList<T> linkedListFrom(Iterable<? extends T> ts) {
+        if (ts instanceof Collection) {
+            return new LinkedList<T>((Collection<? extends T>) ts);
+        }
         LinkedList<T> result = new LinkedList<T>();
         for (T t : ts) {
             result.add(t);
@@ -22,7 +42,15 @@ public class CollectionFactory {
     }
 
     public static <T> ArrayList<T> arrayList(T...ts) {
-        ArrayList<T> result = new ArrayList<T>(ts.length);
+        // Copies the backing array in bulk rather than element by element
+        return new ArrayList<T>(Arrays.asList(ts));
+    }
+
+    public static <T> ArrayList<T> arrayListFrom(Iterable<? extends T> ts) {
+        if (ts instanceof Collection) {
+            return new ArrayList<T>((Collection<? extends T>) ts);
+        }
+        ArrayList<T> result = new ArrayList<T>();
         for (T t : ts) {
             result.add(t);
         }
@@ -40,29 +68,81 @@ public class CollectionFactory {
             this.k = k;
             this.v = v;
         }
+
+        public K key() {
+            return k;
+        }
+
+        public V value() {
+            return v;
+        }
+
+        @Override
+        public String toString() {
+            return k + "=" + v;
+        }
     }
 
     public static <K,V> KV<K,V> kv(K k, V v) {
         return new KV<K,V>(k, v);
     }
 
+    /**
+     * Return the initial capacity a hashed collection needs to hold expectedSize
+     * elements at the default load factor without rehashing.
+     *
+     * @param expectedSize The number of elements the collection will hold.
+     * @return the initial capacity to use.
+     */
+    static int capacityFor(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("'expectedSize' cannot be negative");
+        }
+        if (expectedSize < 3) {
+            return expectedSize + 1;
+        }
+        if (expectedSize < (1 << 30)) {
+            return (int) (expectedSize / 0.75f + 1.0f);
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    public static <K,V> LinkedHashMap<K, V> linkedHashMapWithExpectedSize(int expectedSize) {
+        return new LinkedHashMap<K,V>(capacityFor(expectedSize));
+    }
+
     public static <K,V> LinkedHashMap<K, V> linkedHashMap(KV<K,V>...kvs) {
-        LinkedHashMap<K,V> result = new LinkedHashMap<K,V>();
+        LinkedHashMap<K,V> result = linkedHashMapWithExpectedSize(kvs.length);
         for (KV<K, V> kv : kvs) {
             result.put(kv.k, kv.v);
         }
         return result;
     }
 
+    public static <K, V> HashMap<K,V> hashMapWithExpectedSize(int expectedSize) {
+        return new HashMap<K,V>(capacityFor(expectedSize));
+    }
+
     public static <K, V> HashMap<K,V> hashMap(KV<K,V>... kvs) {
-        HashMap<K,V> result = new HashMap<K,V>();
+        HashMap<K,V> result = hashMapWithExpectedSize(kvs.length);
         for (KV<K, V> kv : kvs) {
             result.put(kv.k, kv.v);
         }
         return result;
     }
 
+    /**
+     * Return a TreeMap containing kvs.  If the keys are already in strictly ascending
+     * order, the tree is built in O(n) instead of by n O(log n) insertions.
+     */
     public static <K, V> TreeMap<K,V> treeMap(KV<K,V>... kvs) {
+        Object[] keys = new Object[kvs.length];
+        for (int i = 0; i < kvs.length; i++) {
+            keys[i] = kvs[i].k;
+        }
+        if (isStrictlyAscending(keys)) {
+            return new TreeMap<K,V>(new SortedKVs<K,V>(kvs));
+        }
         TreeMap<K,V> result = new TreeMap<K,V>();
         for (KV<K, V> kv : kvs) {
             result.put(kv.k, kv.v);
@@ -74,7 +154,22 @@ public class CollectionFactory {
         return hashMap(kvs);
     }
 
+    public static <T> LinkedHashSet<T> linkedHashSetWithExpectedSize(int expectedSize) {
+        return new LinkedHashSet<T>(capacityFor(expectedSize));
+    }
+
     public static <T> LinkedHashSet<T> linkedHashSet(T...ts) {
+        LinkedHashSet<T> result = linkedHashSetWithExpectedSize(ts.length);
+        for (T t : ts) {
+            result.add(t);
+        }
+        return result;
+    }
+
+    public static <T> LinkedHashSet<T> linkedHashSetFrom(Iterable<? extends T> ts) {
+        if (ts instanceof Collection) {
+            return new LinkedHashSet<T>((Collection<? extends T>) ts);
+        }
         LinkedHashSet<T> result = new LinkedHashSet<T>();
         for (T t : ts) {
             result.add(t);
@@ -82,7 +177,22 @@ public class CollectionFactory {
         return result;
     }
 
+    public static <T> HashSet<T> hashSetWithExpectedSize(int expectedSize) {
+        return new HashSet<T>(capacityFor(expectedSize));
+    }
+
     public static <T> HashSet<T> hashSet(T...ts) {
+        HashSet<T> result = hashSetWithExpectedSize(ts.length);
+        for (T t : ts) {
+            result.add(t);
+        }
+        return result;
+    }
+
+    public static <T> HashSet<T> hashSetFrom(Iterable<? extends T> ts) {
+        if (ts instanceof Collection) {
+            return new HashSet<T>((Collection<? extends T>) ts);
+        }
         HashSet<T> result = new HashSet<T>();
         for (T t : ts) {
             result.add(t);
@@ -90,7 +200,14 @@ public class CollectionFactory {
         return result;
     }
 
+    /**
+     * Return a TreeSet containing ts.  If ts is already in strictly ascending order,
+     * the tree is built in O(n) instead of by n O(log n) insertions.
+     */
     public static <T> TreeSet<T> treeSet(T...ts) {
+        if (isStrictlyAscending(ts)) {
+            return new TreeSet<T>(new SortedElements<T>(ts));
+        }
         TreeSet<T> result = new TreeSet<T>();
         for (T t : ts) {
             result.add(t);
@@ -98,10 +215,217 @@ public class CollectionFactory {
         return result;
     }
 
+    /**
+     * Return a TreeSet containing ts, ordered by natural ordering.  Sorted input is
+     * built in O(n).
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> TreeSet<T> treeSetFrom(Iterable<? extends T> ts) {
+        if (ts instanceof SortedSet && ((SortedSet<? extends T>) ts).comparator() == null) {
+            return new TreeSet<T>((SortedSet<T>) ts);
+        }
+        if (ts instanceof Collection) {
+            return treeSet((T[]) ((Collection<? extends T>) ts).toArray());
+        }
+        TreeSet<T> result = new TreeSet<T>();
+        for (T t : ts) {
+            result.add(t);
+        }
+        return result;
+    }
+
+    /*
+     * Arrays shorter than 2 report false so that they take the ordinary insertion path,
+     * which rejects null and non-Comparable elements just as TreeMap always has.
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean isStrictlyAscending(Object[] ts) {
+        if (ts.length < 2) {
+            return false;
+        }
+        for (int i = 1; i < ts.length; i++) {
+            if (((Comparable<Object>) ts[i - 1]).compareTo(ts[i]) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * A read-only SortedSet view over a strictly ascending array.  TreeSet recognizes
+     * SortedSet sources with the same comparator and builds its tree from them in O(n).
+     */
+    private static final class SortedElements<T> extends AbstractSet<T> implements SortedSet<T> {
+        private final T[] ts;
+
+        SortedElements(T[] ts) {
+            this.ts = ts;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return Arrays.asList(ts).iterator();
+        }
+
+        @Override
+        public int size() {
+            return ts.length;
+        }
+
+        @Override
+        public Comparator<? super T> comparator() {
+            return null;
+        }
+
+        @Override
+        public T first() {
+            if (ts.length == 0) {
+                throw new NoSuchElementException();
+            }
+            return ts[0];
+        }
+
+        @Override
+        public T last() {
+            if (ts.length == 0) {
+                throw new NoSuchElementException();
+            }
+            return ts[ts.length - 1];
+        }
+
+        @Override
+        public SortedSet<T> subSet(T fromElement, T toElement) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedSet<T> headSet(T toElement) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T fromElement) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /*
+     * A read-only SortedMap view over KVs whose keys are strictly ascending.  TreeMap
+     * builds its tree from SortedMap sources in O(n).
+     */
+    private static final class SortedKVs<K,V> extends AbstractMap<K,V> implements SortedMap<K,V> {
+        private final KV<K,V>[] kvs;
+
+        SortedKVs(KV<K,V>[] kvs) {
+            this.kvs = kvs;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K,V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new Iterator<Map.Entry<K,V>>() {
+                        private int i = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < kvs.length;
+                        }
+
+                        @Override
+                        public Map.Entry<K, V> next() {
+                            if (i >= kvs.length) {
+                                throw new NoSuchElementException();
+                            }
+                            KV<K,V> kv = kvs[i++];
+                            return new AbstractMap.SimpleImmutableEntry<K,V>(kv.k, kv.v);
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return kvs.length;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return kvs.length;
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return null;
+        }
+
+        @Override
+        public K firstKey() {
+            if (kvs.length == 0) {
+                throw new NoSuchElementException();
+            }
+            return kvs[0].k;
+        }
+
+        @Override
+        public K lastKey() {
+            if (kvs.length == 0) {
+                throw new NoSuchElementException();
+            }
+            return kvs[kvs.length - 1].k;
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     public static <T> Set<T> set(T...ts) {
         return hashSet(ts);
     }
 
+    public static <T> PersistentVector<T> persistentVector(T...ts) {
+        PersistentVector.Transient<T> result = PersistentVector.<T>empty().asTransient();
+        for (T t : ts) {
+            result.add(t);
+        }
+        return result.persistent();
+    }
+
+    public static <T> PersistentHashSet<T> persistentHashSet(T...ts) {
+        PersistentHashSet.Transient<T> result = PersistentHashSet.<T>empty().asTransient();
+        for (T t : ts) {
+            result.add(t);
+        }
+        return result.persistent();
+    }
+
+    public static <K,V> PersistentHashMap<K,V> persistentHashMap(KV<K,V>...kvs) {
+        PersistentHashMap.Transient<K,V> result = PersistentHashMap.<K,V>empty().asTransient();
+        for (KV<K, V> kv : kvs) {
+            result.put(kv.k, kv.v);
+        }
+        return result.persistent();
+    }
+
     public static String[] array(String...results) {
         return results;
     }
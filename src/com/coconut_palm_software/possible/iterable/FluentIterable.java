@@ -1,5 +1,17 @@
 package com.coconut_palm_software.possible.iterable;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import com.coconut_palm_software.possible.Nulls;
+import com.coconut_palm_software.possible.Possible;
+import com.coconut_palm_software.possible.iterable.CollectionFactory.KV;
 
 /**
  * A basic implementation of the monadic operations over Java's Iterable&lt;T&gt;.
@@ -20,25 +32,162 @@ package com.coconut_palm_software.possible.iterable;
 public class FluentIterable<R> {
 
 	private Iterable<R> source;
+	private PipelineProfile profile;
+	private int maxElementsInMemory;
+	private List<SpillingIterable<?>> spills;
 
-	private FluentIterable(Iterable<R> source) {
+	private FluentIterable(Iterable<R> source, PipelineProfile profile, int maxElementsInMemory,
+			List<SpillingIterable<?>> spills)
+	{
 		this.source = source;
+		this.profile = profile;
+		this.maxElementsInMemory = maxElementsInMemory;
+		this.spills = spills;
 	}
 
 	public static <A> FluentIterable<A> iterateOver(Iterable<A> source)
 	{
-		return new FluentIterable<A>(source);
+		return new FluentIterable<A>(source, null, 0, null);
+	}
+
+	/**
+	 * Lazily merge sources that are each already sorted by comparator into a single
+	 * sorted FluentIterable.  Producing n elements takes O(n log k) time and O(k)
+	 * memory, where k is the number of sources.
+	 *
+	 * @param sources The sorted Iterables to merge.
+	 * @param comparator The order each source is sorted in.
+	 * @param <A> The element type.
+	 * @return a FluentIterable over the merged elements.
+	 */
+	public static <A> FluentIterable<A> mergeSorted(Iterable<? extends Iterable<? extends A>> sources,
+			Comparator<? super A> comparator)
+	{
+		return iterateOver(new MergedIterable<A>(sources, comparator, false));
+	}
+
+	/**
+	 * Like {@link #mergeSorted(Iterable, Comparator)}, but returns only the first of
+	 * each run of elements that comparator considers equal.
+	 *
+	 * @param sources The sorted Iterables to merge.
+	 * @param comparator The order each source is sorted in.
+	 * @param <A> The element type.
+	 * @return a FluentIterable over the merged, de-duplicated elements.
+	 */
+	public static <A> FluentIterable<A> mergeSortedDistinct(Iterable<? extends Iterable<? extends A>> sources,
+			Comparator<? super A> comparator)
+	{
+		return iterateOver(new MergedIterable<A>(sources, comparator, true));
+	}
+
+	/*
+	 * Return a FluentIterable over result that keeps this pipeline's settings.
+	 */
+	private <Dest> FluentIterable<Dest> derive(Iterable<Dest> result) {
+		return new FluentIterable<Dest>(result, profile, maxElementsInMemory, spills);
+	}
+
+	/**
+	 * Limit the number of elements each following transformAndConcat stage holds in
+	 * memory.  Past the limit, stage results spill to temporary files, and the stage's
+	 * result() is a {@link SpillingIterable} that streams them back from disk.
+	 * <p>
+	 * Spilled results stay readable, so stages may branch from any of them.  Call
+	 * {@link #deleteSpilledResults()} once the pipeline's results are no longer needed.
+	 *
+	 * @param maxElementsInMemory The number of elements to buffer before spilling.
+	 * @return a FluentIterable over the same source with the memory budget applied.
+	 */
+	public FluentIterable<R> withMemoryBudget(int maxElementsInMemory) {
+		if (maxElementsInMemory < 1) {
+			throw new IllegalArgumentException("'maxElementsInMemory' must be positive");
+		}
+		List<SpillingIterable<?>> budgetSpills = spills != null ? spills
+				: Collections.synchronizedList(new ArrayList<SpillingIterable<?>>());
+		return new FluentIterable<R>(source, profile, maxElementsInMemory, budgetSpills);
+	}
+
+	/**
+	 * Close every {@link SpillingIterable} created by memory-budgeted stages of this
+	 * pipeline, including stages on other branches derived from the same
+	 * withMemoryBudget call, deleting their files.  Those results can no longer be
+	 * iterated afterwards.
+	 */
+	public void deleteSpilledResults() {
+		if (spills == null) {
+			return;
+		}
+		synchronized (spills) {
+			for (SpillingIterable<?> spill : spills) {
+				spill.close();
+			}
+			spills.clear();
+		}
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private UnitFunction newResultContainer(Iterable<?> source) {
+		if (maxElementsInMemory > 0) {
+			SpillingIterable spill = new SpillingIterable(maxElementsInMemory);
+			spills.add(spill);
+			return UnitFunction.addingTo(spill);
+		}
+		try {
+			return new UnitFunction(source.getClass());
+		} catch (IllegalArgumentException e) {
+			// Lazy sources such as merges can't be constructed empty; collect into a list
+			return new UnitFunction(ArrayList.class);
+		}
+	}
+
+	/**
+	 * Record statistics for this stage and every stage derived from it in profile.
+	 *
+	 * @param profile The profile to record into.
+	 * @return a FluentIterable over the same source that records into profile.
+	 */
+	public FluentIterable<R> profiledBy(PipelineProfile profile) {
+		Nulls.assertNotNull(profile, "profile");
+		return new FluentIterable<R>(source, profile, maxElementsInMemory, spills);
+	}
+
+	/**
+	 * @return the PipelineProfile this pipeline records into, if any.
+	 */
+	public Possible<PipelineProfile> profile() {
+		return Nulls.possible(profile);
 	}
 
 	@SuppressWarnings("unchecked")
 	public <T extends Iterable<R>> T result() { return (T) source; }
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * Return an {@link IncrementalView} over this FluentIterable's current results.
+	 * Stages added to the view are updated incrementally as elements are inserted
+	 * and removed.
+	 *
+	 * @return an IncrementalView over the current results.
+	 */
+	public IncrementalView<R, R> incremental() {
+		return IncrementalView.incrementalOver(source);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public <Dest, IntermediateResults extends Iterable<Dest>, DestResults extends Iterable<Dest>>
 		FluentIterable<Dest> transformAndConcat(F<R, IntermediateResults> func)
 	{
-		Iterable<Dest> result = transformAndConcat(source, func);
-		return new FluentIterable<Dest>((DestResults) result);
+		if (profile == null) {
+			Iterable<Dest> result = transformAndConcat(source, func);
+			return derive((DestResults) result);
+		}
+		long start = System.nanoTime();
+		long[] counts = new long[2];
+		UnitFunction resultContainer = newResultContainer(source);
+		transform(source, func, resultContainer, counts);
+		Iterable<Dest> result = (Iterable<Dest>) resultContainer.result();
+		record("transformAndConcat", func, counts[0], counts[1], start, result);
+		return derive(result);
 	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
@@ -46,37 +195,514 @@ public class FluentIterable<R> {
 	Dest, IntermediateResults extends Iterable<Dest>, DestResults extends Iterable<Dest>>
 		DestResults transformAndConcat(SourceResults source, F<Source, IntermediateResults> func)
 	{
-		UnitFunction resultContainer = new UnitFunction(source.getClass());
-		transform(source, func, resultContainer);
+		UnitFunction resultContainer = newResultContainer(source);
+		transform(source, func, resultContainer, null);
 		return (DestResults) resultContainer.result();
 	}
 
+	/*
+	 * counts, when non-null, accumulates {elements in, elements out} for profiling.
+	 */
 	@SuppressWarnings("rawtypes")
 	private <Dest, IntermediateResults extends Iterable<Dest>, Source, SourceResults extends Iterable<Source>>
 		void transform(SourceResults source, F<Source, IntermediateResults> func,
-						UnitFunction ResultContainer)
+						UnitFunction ResultContainer, long[] counts)
 	{
 		for (Source a : (Iterable<Source>)source) {
 			IntermediateResults intermediateResults = func.apply(a);
-			concat(ResultContainer, intermediateResults);
+			long added = concat(ResultContainer, intermediateResults);
+			if (counts != null) {
+				++counts[0];
+				counts[1] += added;
+			}
 		}
 	}
 
 	@SuppressWarnings("rawtypes")
 	private <Dest, IntermediateResults extends Iterable<Dest>>
-		void concat(UnitFunction results, IntermediateResults intermediateResults)
+		long concat(UnitFunction results, IntermediateResults intermediateResults)
 	{
+		long added = 0;
 		for (Dest intermediateResult : intermediateResults) {
 			results.add(intermediateResult);
+			++added;
 		}
+		return added;
 	}
 
     public <Dest> Dest reduce(F2<Dest, R, Dest> func, Dest initialValue) {
+        if (profile != null) {
+            return profiledReduce(func, initialValue);
+        }
         Dest accumulator = initialValue;
         for (R element : source) {
             accumulator = func.apply(accumulator, element);
         }
         return accumulator;
     }
-}
 
+    /**
+     * Like {@link #reduce(F2, Object)}, but periodically snapshots the accumulator and
+     * source position as configured by checkpoint.  If a snapshot exists when the
+     * reduce starts, it resumes from there, skipping the elements already reduced.
+     * The snapshot is deleted when the reduce completes.
+     * <p>
+     * Resuming requires the source to return the same elements in the same order
+     * each time it is iterated.
+     *
+     * @param func The reducing function.
+     * @param initialValue The accumulator's value when there is no snapshot.
+     * @param checkpoint Where and how often to take snapshots.
+     * @param <Dest> The accumulator type.
+     * @return the reduced value.
+     */
+    public <Dest> Dest reduce(F2<Dest, R, Dest> func, Dest initialValue, Checkpoint<Dest> checkpoint) {
+        long start = profile == null ? 0 : System.nanoTime();
+        Dest accumulator = initialValue;
+        long resumePosition = 0;
+        Possible<Checkpoint.Snapshot<Dest>> snapshot = checkpoint.read();
+        if (snapshot.hasValue()) {
+            accumulator = snapshot.get().accumulator;
+            resumePosition = snapshot.get().position;
+        }
+
+        long everyElements = checkpoint.everyElements();
+        long everyNanos = checkpoint.everyMillis() * 1000000L;
+        long position = 0;
+        long lastCheckpointPosition = resumePosition;
+        long lastCheckpointTime = everyNanos > 0 ? System.nanoTime() : 0;
+        for (R element : source) {
+            if (position++ < resumePosition) {
+                continue;
+            }
+            accumulator = func.apply(accumulator, element);
+
+            boolean due = everyElements > 0 && position - lastCheckpointPosition >= everyElements;
+            if (!due && everyNanos > 0 && position % Checkpoint.CLOCK_CHECK_INTERVAL == 0) {
+                due = System.nanoTime() - lastCheckpointTime >= everyNanos;
+            }
+            if (due) {
+                checkpoint.write(position, accumulator);
+                lastCheckpointPosition = position;
+                if (everyNanos > 0) {
+                    lastCheckpointTime = System.nanoTime();
+                }
+            }
+        }
+        if (position < resumePosition) {
+            throw new IllegalStateException("Checkpoint is past the end of the source: " + resumePosition);
+        }
+        checkpoint.delete();
+        if (profile != null) {
+            record("reduce", func, position - resumePosition, 1, start, accumulator);
+        }
+        return accumulator;
+    }
+
+    private <Dest> Dest profiledReduce(F2<Dest, R, Dest> func, Dest initialValue) {
+        long start = System.nanoTime();
+        long in = 0;
+        Dest accumulator = initialValue;
+        for (R element : source) {
+            ++in;
+            accumulator = func.apply(accumulator, element);
+        }
+        profile.record(new PipelineProfile.Stage("reduce", func, in, 1,
+                System.nanoTime() - start, accumulator));
+        return accumulator;
+    }
+
+    /**
+     * Group the elements by the key keyFunction computes for each one.  Groups are
+     * accumulated in an open-addressing hash table; the returned map iterates keys
+     * in the order they were first seen and each group keeps source order.
+     *
+     * @param keyFunction Computes each element's key.
+     * @param <K> The key type.
+     * @return a Map from each key to the elements with that key.
+     */
+    public <K> Map<K, List<R>> groupBy(F<R, K> keyFunction) {
+        long start = profile == null ? 0 : System.nanoTime();
+        Aggregations.Groups<K, R> groups = new Aggregations.Groups<K, R>();
+        groups.addAll(source, keyFunction);
+        Map<K, List<R>> result = groups.toMap();
+        if (profile != null) {
+            record("groupBy", keyFunction, groups.elements, result.size(), start, result);
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #groupBy(F)}, but groups chunks of the source in parallel on
+     * executor and then merges the partial tables.  keyFunction must be thread-safe.
+     *
+     * @param keyFunction Computes each element's key.
+     * @param executor The ExecutorService to run on.
+     * @param <K> The key type.
+     * @return a Map from each key to the elements with that key.
+     */
+    public <K> Map<K, List<R>> groupBy(final F<R, K> keyFunction, ExecutorService executor) {
+        long start = profile == null ? 0 : System.nanoTime();
+        List<Callable<Aggregations.Groups<K, R>>> tasks = new ArrayList<Callable<Aggregations.Groups<K, R>>>();
+        for (final List<R> chunk : Parallel.chunks(source)) {
+            tasks.add(new Callable<Aggregations.Groups<K, R>>() {
+                @Override
+                public Aggregations.Groups<K, R> call() {
+                    Aggregations.Groups<K, R> partial = new Aggregations.Groups<K, R>();
+                    partial.addAll(chunk, keyFunction);
+                    return partial;
+                }
+            });
+        }
+        Aggregations.Groups<K, R> groups = new Aggregations.Groups<K, R>();
+        for (Aggregations.Groups<K, R> partial : Parallel.invokeAll(executor, tasks)) {
+            groups.merge(partial);
+        }
+        Map<K, List<R>> result = groups.toMap();
+        if (profile != null) {
+            record("groupBy", keyFunction, groups.elements, result.size(), start, result);
+        }
+        return result;
+    }
+
+    /**
+     * Count the elements by the key keyFunction computes for each one.  Counts are
+     * kept as primitive longs in an open-addressing hash table and boxed only when the
+     * result map is built.
+     *
+     * @param keyFunction Computes each element's key.
+     * @param <K> The key type.
+     * @return a Map from each key to the number of elements with that key.
+     */
+    public <K> Map<K, Long> countBy(F<R, K> keyFunction) {
+        long start = profile == null ? 0 : System.nanoTime();
+        Aggregations.Counts<K, R> counts = new Aggregations.Counts<K, R>();
+        counts.addAll(source, keyFunction);
+        Map<K, Long> result = counts.toMap();
+        if (profile != null) {
+            record("countBy", keyFunction, counts.elements, result.size(), start, result);
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #countBy(F)}, but counts chunks of the source in parallel on
+     * executor and then merges the partial tables.  keyFunction must be thread-safe.
+     *
+     * @param keyFunction Computes each element's key.
+     * @param executor The ExecutorService to run on.
+     * @param <K> The key type.
+     * @return a Map from each key to the number of elements with that key.
+     */
+    public <K> Map<K, Long> countBy(final F<R, K> keyFunction, ExecutorService executor) {
+        long start = profile == null ? 0 : System.nanoTime();
+        List<Callable<Aggregations.Counts<K, R>>> tasks = new ArrayList<Callable<Aggregations.Counts<K, R>>>();
+        for (final List<R> chunk : Parallel.chunks(source)) {
+            tasks.add(new Callable<Aggregations.Counts<K, R>>() {
+                @Override
+                public Aggregations.Counts<K, R> call() {
+                    Aggregations.Counts<K, R> partial = new Aggregations.Counts<K, R>();
+                    partial.addAll(chunk, keyFunction);
+                    return partial;
+                }
+            });
+        }
+        Aggregations.Counts<K, R> counts = new Aggregations.Counts<K, R>();
+        for (Aggregations.Counts<K, R> partial : Parallel.invokeAll(executor, tasks)) {
+            counts.merge(partial);
+        }
+        Map<K, Long> result = counts.toMap();
+        if (profile != null) {
+            record("countBy", keyFunction, counts.elements, result.size(), start, result);
+        }
+        return result;
+    }
+
+    /**
+     * Remove duplicate elements, keeping the first occurrence of each.  Elements
+     * stream straight from the source into a result container of the source's class;
+     * only the distinct elements are tracked.
+     *
+     * @return a FluentIterable over the distinct elements.
+     */
+    public FluentIterable<R> distinct() {
+        return distinctBy(null);
+    }
+
+    /**
+     * Remove elements whose key duplicates the key of an earlier element.
+     *
+     * @param keyFunction Computes each element's key, or null to use the element itself.
+     * @param <K> The key type.
+     * @return a FluentIterable over the elements with distinct keys.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public <K> FluentIterable<R> distinctBy(F<R, K> keyFunction) {
+        long start = profile == null ? 0 : System.nanoTime();
+        long in = 0;
+        KeyIndex seen = new KeyIndex();
+        UnitFunction resultContainer = newResultContainer(source);
+        for (R element : source) {
+            ++in;
+            Object key = keyFunction == null ? element : keyFunction.apply(element);
+            if (seen.addOrFind(key) < 0) {
+                resultContainer.add(element);
+            }
+        }
+        Iterable<R> result = (Iterable<R>) resultContainer.result();
+        if (profile != null) {
+            record(keyFunction == null ? "distinct" : "distinctBy", keyFunction, in, seen.size(), start, result);
+        }
+        return derive(result);
+    }
+
+    /**
+     * Return the k largest elements according to comparator, largest first.  Uses
+     * a bounded heap: O(n log k) time and O(k) memory.
+     *
+     * @param k The maximum number of elements to return.
+     * @param comparator The ordering.
+     * @return the k largest elements, largest first.
+     */
+    public List<R> topK(int k, Comparator<? super R> comparator) {
+        return select("topK", comparator, new BoundedHeap.OfComparator<R>(k, comparator), null);
+    }
+
+    /**
+     * Like {@link #topK(int, Comparator)}, but selects from chunks of the source in
+     * parallel on executor and then merges the partial heaps.
+     *
+     * @param k The maximum number of elements to return.
+     * @param comparator The ordering.
+     * @param executor The ExecutorService to run on.
+     * @return the k largest elements, largest first.
+     */
+    public List<R> topK(int k, Comparator<? super R> comparator, ExecutorService executor) {
+        Nulls.assertNotNull(executor, "executor");
+        return select("topK", comparator, new BoundedHeap.OfComparator<R>(k, comparator), executor);
+    }
+
+    /**
+     * Return the first k elements of the source as if it were sorted by comparator.
+     * Uses a bounded heap: O(n log k) time and O(k) memory.
+     *
+     * @param k The maximum number of elements to return.
+     * @param comparator The ordering.
+     * @return the k smallest elements, smallest first.
+     */
+    public List<R> sortedLimit(int k, Comparator<? super R> comparator) {
+        Nulls.assertNotNull(comparator, "comparator");
+        return select("sortedLimit", comparator,
+                new BoundedHeap.OfComparator<R>(k, Collections.reverseOrder(comparator)), null);
+    }
+
+    /**
+     * Like {@link #sortedLimit(int, Comparator)}, but selects from chunks of the
+     * source in parallel on executor and then merges the partial heaps.
+     *
+     * @param k The maximum number of elements to return.
+     * @param comparator The ordering.
+     * @param executor The ExecutorService to run on.
+     * @return the k smallest elements, smallest first.
+     */
+    public List<R> sortedLimit(int k, Comparator<? super R> comparator, ExecutorService executor) {
+        Nulls.assertNotNull(comparator, "comparator");
+        Nulls.assertNotNull(executor, "executor");
+        return select("sortedLimit", comparator,
+                new BoundedHeap.OfComparator<R>(k, Collections.reverseOrder(comparator)), executor);
+    }
+
+    /**
+     * Return the k elements with the highest scores, highest first.  Each score is
+     * computed once and compared unboxed.
+     *
+     * @param k The maximum number of elements to return.
+     * @param score Computes each element's score.
+     * @return the k highest-scoring elements, highest first.
+     */
+    public List<R> topKByDouble(int k, DoubleF<R> score) {
+        return select("topKByDouble", score, new BoundedHeap.OfDouble<R>(k, score), null);
+    }
+
+    /**
+     * Like {@link #topKByDouble(int, DoubleF)}, but selects from chunks of the source
+     * in parallel on executor and then merges the partial heaps.
+     *
+     * @param k The maximum number of elements to return.
+     * @param score Computes each element's score.
+     * @param executor The ExecutorService to run on.
+     * @return the k highest-scoring elements, highest first.
+     */
+    public List<R> topKByDouble(int k, DoubleF<R> score, ExecutorService executor) {
+        Nulls.assertNotNull(executor, "executor");
+        return select("topKByDouble", score, new BoundedHeap.OfDouble<R>(k, score), executor);
+    }
+
+    /**
+     * Return the k elements with the highest scores, highest first.  Each score is
+     * computed once and compared unboxed.
+     *
+     * @param k The maximum number of elements to return.
+     * @param score Computes each element's score.
+     * @return the k highest-scoring elements, highest first.
+     */
+    public List<R> topKByLong(int k, LongF<R> score) {
+        return select("topKByLong", score, new BoundedHeap.OfLong<R>(k, score), null);
+    }
+
+    /**
+     * Like {@link #topKByLong(int, LongF)}, but selects from chunks of the source in
+     * parallel on executor and then merges the partial heaps.
+     *
+     * @param k The maximum number of elements to return.
+     * @param score Computes each element's score.
+     * @param executor The ExecutorService to run on.
+     * @return the k highest-scoring elements, highest first.
+     */
+    public List<R> topKByLong(int k, LongF<R> score, ExecutorService executor) {
+        Nulls.assertNotNull(executor, "executor");
+        return select("topKByLong", score, new BoundedHeap.OfLong<R>(k, score), executor);
+    }
+
+    /**
+     * Inner hash equi-join: pair each element with each element of other that has an
+     * equal key.  A hash table is built over the smaller side when both sides are
+     * Collections (otherwise over other), and the other side is probed lazily as the
+     * result is iterated.  Null keys never match.
+     *
+     * @param other The elements to join with.
+     * @param key Computes this side's keys.
+     * @param otherKey Computes other's keys.
+     * @param <O> The type of other's elements.
+     * @param <K> The key type.
+     * @return a FluentIterable over the matching (element, other element) pairs.
+     */
+    public <O, K> FluentIterable<KV<R, O>> join(Iterable<O> other, F<R, K> key, F<O, K> otherKey) {
+        return join(other, key, otherKey, null);
+    }
+
+    /**
+     * Like {@link #join(Iterable, F, F)}, but builds the hash table in parallel on
+     * executor.  The key functions must be thread-safe.
+     *
+     * @param other The elements to join with.
+     * @param key Computes this side's keys.
+     * @param otherKey Computes other's keys.
+     * @param executor The ExecutorService to build on, or null to build sequentially.
+     * @param <O> The type of other's elements.
+     * @param <K> The key type.
+     * @return a FluentIterable over the matching (element, other element) pairs.
+     */
+    public <O, K> FluentIterable<KV<R, O>> join(Iterable<O> other, F<R, K> key, F<O, K> otherKey,
+            ExecutorService executor)
+    {
+        if (source instanceof Collection && other instanceof Collection
+                && ((Collection<?>) source).size() < ((Collection<?>) other).size())
+        {
+            return derive(HashJoin.build(source, key, executor).<O, K, R, O>inner(other, otherKey, false));
+        }
+        return derive(HashJoin.build(other, otherKey, executor).<R, K, R, O>inner(source, key, true));
+    }
+
+    /**
+     * Left outer hash equi-join: pair each element with each element of other that
+     * has an equal key, or with Possible.emptyValue() if there are none.  A hash table
+     * is built over other; this side is probed lazily.  Null keys never match.
+     *
+     * @param other The elements to join with.
+     * @param key Computes this side's keys.
+     * @param otherKey Computes other's keys.
+     * @param <O> The type of other's elements.
+     * @param <K> The key type.
+     * @return a FluentIterable over the (element, possible other element) pairs.
+     */
+    public <O, K> FluentIterable<KV<R, Possible<O>>> leftOuterJoin(Iterable<O> other, F<R, K> key, F<O, K> otherKey) {
+        return leftOuterJoin(other, key, otherKey, null);
+    }
+
+    /**
+     * Like {@link #leftOuterJoin(Iterable, F, F)}, but builds the hash table in
+     * parallel on executor.  The key functions must be thread-safe.
+     *
+     * @param other The elements to join with.
+     * @param key Computes this side's keys.
+     * @param otherKey Computes other's keys.
+     * @param executor The ExecutorService to build on, or null to build sequentially.
+     * @param <O> The type of other's elements.
+     * @param <K> The key type.
+     * @return a FluentIterable over the (element, possible other element) pairs.
+     */
+    public <O, K> FluentIterable<KV<R, Possible<O>>> leftOuterJoin(Iterable<O> other, F<R, K> key,
+            F<O, K> otherKey, ExecutorService executor)
+    {
+        return derive(HashJoin.build(other, otherKey, executor).leftOuter(source, key));
+    }
+
+    /**
+     * Semi-join: keep the elements that have at least one element of other with an
+     * equal key.  Each element is returned at most once.  Null keys never match.
+     *
+     * @param other The elements to match against.
+     * @param key Computes this side's keys.
+     * @param otherKey Computes other's keys.
+     * @param <O> The type of other's elements.
+     * @param <K> The key type.
+     * @return a FluentIterable over the matching elements.
+     */
+    public <O, K> FluentIterable<R> semiJoin(Iterable<O> other, F<R, K> key, F<O, K> otherKey) {
+        return semiJoin(other, key, otherKey, null);
+    }
+
+    /**
+     * Like {@link #semiJoin(Iterable, F, F)}, but builds the hash table in parallel on
+     * executor.  The key functions must be thread-safe.
+     *
+     * @param other The elements to match against.
+     * @param key Computes this side's keys.
+     * @param otherKey Computes other's keys.
+     * @param executor The ExecutorService to build on, or null to build sequentially.
+     * @param <O> The type of other's elements.
+     * @param <K> The key type.
+     * @return a FluentIterable over the matching elements.
+     */
+    public <O, K> FluentIterable<R> semiJoin(Iterable<O> other, F<R, K> key, F<O, K> otherKey,
+            ExecutorService executor)
+    {
+        return derive(HashJoin.build(other, otherKey, executor).semi(source, key));
+    }
+
+    private List<R> select(String operation, Object function, final BoundedHeap<R> heap,
+            ExecutorService executor)
+    {
+        long start = profile == null ? 0 : System.nanoTime();
+        if (executor == null) {
+            heap.offerAll(source);
+        } else {
+            List<Callable<BoundedHeap<R>>> tasks = new ArrayList<Callable<BoundedHeap<R>>>();
+            for (final List<R> chunk : Parallel.chunks(source)) {
+                tasks.add(new Callable<BoundedHeap<R>>() {
+                    @Override
+                    public BoundedHeap<R> call() {
+                        BoundedHeap<R> partial = heap.newEmpty();
+                        partial.offerAll(chunk);
+                        return partial;
+                    }
+                });
+            }
+            for (BoundedHeap<R> partial : Parallel.invokeAll(executor, tasks)) {
+                heap.merge(partial);
+            }
+        }
+        long in = heap.offered;
+        List<R> result = heap.drainBestFirst();
+        if (profile != null) {
+            record(operation, function, in, result.size(), start, result);
+        }
+        return result;
+    }
+
+    private void record(String operation, Object function, long in, long out, long start, Object result) {
+        profile.record(new PipelineProfile.Stage(operation, function, in, out,
+                System.nanoTime() - start, result));
+    }
+}
@@ -0,0 +1,312 @@
+package com.coconut_palm_software.possible.iterable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import com.coconut_palm_software.possible.Possible;
+import com.coconut_palm_software.possible.iterable.CollectionFactory.KV;
+
+/**
+ * The build side of a hash equi-join: every build row hashed by its key into
+ * open-addressing {@link KeyIndex} tables, with rows that share a key chained in
+ * build order.  Probing is lazy; the returned Iterables look up each probe element
+ * as they are iterated.
+ * <p>
+ * A parallel build computes keys and hash partitions for chunks of the build side
+ * concurrently, then builds one table per partition concurrently from just that
+ * partition's rows.  Null keys never match.
+ *
+ * @param <B> The build-side element type
+ */
+final class HashJoin<B> {
+    private final Object[] rows;
+    private final Object[] keys;
+    private final int[] next;
+    private final KeyIndex[] indexes;
+    private final int[][] heads;
+
+    /*
+     * One chunk's keys, and the chunk-relative rows of each partition in build order.
+     */
+    private static final class ChunkKeys {
+        final Object[] keys;
+        final int[][] partitionRows;
+
+        ChunkKeys(Object[] keys, int[][] partitionRows) {
+            this.keys = keys;
+            this.partitionRows = partitionRows;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K> HashJoin(Iterable<B> source, final F<B, K> keyFunction, ExecutorService executor) {
+        final int partitions = executor == null ? 1 : Math.max(1, Runtime.getRuntime().availableProcessors());
+        indexes = new KeyIndex[partitions];
+        heads = new int[partitions][];
+        if (partitions == 1) {
+            rows = CollectionFactory.arrayListFrom(source).toArray();
+            keys = new Object[rows.length];
+            for (int row = 0; row < rows.length; row++) {
+                keys[row] = keyFunction.apply((B) rows[row]);
+            }
+            next = new int[rows.length];
+            buildPartition(0, null);
+            return;
+        }
+
+        // Key extraction also assigns each row its partition, so no row is hashed twice
+        List<List<B>> chunks = Parallel.chunks(source);
+        List<Callable<ChunkKeys>> keyTasks = new ArrayList<Callable<ChunkKeys>>();
+        final int[] chunkStarts = new int[chunks.size()];
+        int size = 0;
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            final List<B> chunkRows = chunks.get(chunk);
+            chunkStarts[chunk] = size;
+            size += chunkRows.size();
+            keyTasks.add(new Callable<ChunkKeys>() {
+                @Override
+                public ChunkKeys call() {
+                    Object[] chunkKeys = new Object[chunkRows.size()];
+                    int[] rowPartitions = new int[chunkKeys.length];
+                    int[] counts = new int[partitions];
+                    for (int i = 0; i < chunkKeys.length; i++) {
+                        Object key = keyFunction.apply(chunkRows.get(i));
+                        chunkKeys[i] = key;
+                        if (key != null) {
+                            rowPartitions[i] = partition(key, partitions);
+                            ++counts[rowPartitions[i]];
+                        }
+                    }
+                    int[][] partitionRows = new int[partitions][];
+                    for (int p = 0; p < partitions; p++) {
+                        partitionRows[p] = new int[counts[p]];
+                        counts[p] = 0;
+                    }
+                    for (int i = 0; i < chunkKeys.length; i++) {
+                        if (chunkKeys[i] != null) {
+                            int p = rowPartitions[i];
+                            partitionRows[p][counts[p]++] = i;
+                        }
+                    }
+                    return new ChunkKeys(chunkKeys, partitionRows);
+                }
+            });
+        }
+        rows = new Object[size];
+        keys = new Object[size];
+        next = new int[size];
+        final List<ChunkKeys> chunkKeys = Parallel.invokeAll(executor, keyTasks);
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            Object[] chunkRows = chunks.get(chunk).toArray();
+            System.arraycopy(chunkRows, 0, rows, chunkStarts[chunk], chunkRows.length);
+            System.arraycopy(chunkKeys.get(chunk).keys, 0, keys, chunkStarts[chunk], chunkRows.length);
+        }
+
+        List<Callable<Void>> buildTasks = new ArrayList<Callable<Void>>();
+        for (int partition = 0; partition < partitions; partition++) {
+            final int p = partition;
+            buildTasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    int count = 0;
+                    for (ChunkKeys chunk : chunkKeys) {
+                        count += chunk.partitionRows[p].length;
+                    }
+                    int[] partitionRows = new int[count];
+                    int i = 0;
+                    for (int chunk = 0; chunk < chunkKeys.size(); chunk++) {
+                        for (int row : chunkKeys.get(chunk).partitionRows[p]) {
+                            partitionRows[i++] = chunkStarts[chunk] + row;
+                        }
+                    }
+                    buildPartition(p, partitionRows);
+                    return null;
+                }
+            });
+        }
+        // Each row belongs to exactly one partition, so tasks write disjoint 'next' slots
+        Parallel.invokeAll(executor, buildTasks);
+    }
+
+    static <B, K> HashJoin<B> build(Iterable<B> source, F<B, K> keyFunction, ExecutorService executor) {
+        return new HashJoin<B>(source, keyFunction, executor);
+    }
+
+    private static int partition(Object key, int partitions) {
+        long mixed = (KeyIndex.hash(key) * 0x85EBCA6BL) & 0xFFFFFFFFL;
+        return (int) ((mixed * partitions) >>> 32);
+    }
+
+    /*
+     * Chain the given rows, in ascending order, into partition's table.  Null
+     * partitionRows means every row, with null keys skipped.
+     */
+    private void buildPartition(int partition, int[] partitionRows) {
+        KeyIndex index = new KeyIndex();
+        int[] partitionHeads = new int[16];
+        int[] tails = new int[16];
+        int count = partitionRows == null ? rows.length : partitionRows.length;
+        for (int i = 0; i < count; i++) {
+            int row = partitionRows == null ? i : partitionRows[i];
+            Object key = keys[row];
+            if (key == null) {
+                continue;
+            }
+            next[row] = -1;
+            int id = index.addOrFind(key);
+            if (id < 0) {
+                id = ~id;
+                if (id == partitionHeads.length) {
+                    int[] newHeads = new int[id * 2];
+                    System.arraycopy(partitionHeads, 0, newHeads, 0, id);
+                    partitionHeads = newHeads;
+                    int[] newTails = new int[id * 2];
+                    System.arraycopy(tails, 0, newTails, 0, id);
+                    tails = newTails;
+                }
+                partitionHeads[id] = row;
+            } else {
+                next[tails[id]] = row;
+            }
+            tails[id] = row;
+        }
+        indexes[partition] = index;
+        heads[partition] = partitionHeads;
+    }
+
+    /* Return the first build row with key, or -1 */
+    int firstMatch(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int partition = partition(key, indexes.length);
+        int id = indexes[partition].find(key);
+        return id < 0 ? -1 : heads[partition][id];
+    }
+
+    /* Return the next build row with the same key as row, or -1 */
+    int nextMatch(int row) {
+        return next[row];
+    }
+
+    @SuppressWarnings("unchecked")
+    B buildRow(int row) {
+        return (B) rows[row];
+    }
+
+    /*
+     * Iterates the probe side, returning zero or more results per probe element.
+     */
+    private static abstract class ProbeIterator<P, T> implements Iterator<T> {
+        private final Iterator<P> probe;
+        private final List<T> pending = new ArrayList<T>();
+        private int position = 0;
+
+        ProbeIterator(Iterable<P> probe) {
+            this.probe = probe.iterator();
+        }
+
+        /* Add the results for p to 'results' */
+        abstract void probe(P p, List<T> results);
+
+        @Override
+        public boolean hasNext() {
+            while (position >= pending.size()) {
+                if (!probe.hasNext()) {
+                    return false;
+                }
+                pending.clear();
+                position = 0;
+                probe(probe.next(), pending);
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return pending.get(position++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /*
+     * Pairs each probe element with each build row sharing its key.  'probeIsLeft'
+     * says which side of the result pairs the probe element goes on.
+     */
+    <P, K, L, R> Iterable<KV<L, R>> inner(final Iterable<P> probeSide, final F<P, K> probeKey,
+            final boolean probeIsLeft)
+    {
+        return new Iterable<KV<L, R>>() {
+            @Override
+            public Iterator<KV<L, R>> iterator() {
+                return new ProbeIterator<P, KV<L, R>>(probeSide) {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    void probe(P p, List<KV<L, R>> results) {
+                        for (int row = firstMatch(probeKey.apply(p)); row >= 0; row = nextMatch(row)) {
+                            if (probeIsLeft) {
+                                results.add(new KV<L, R>((L) p, (R) rows[row]));
+                            } else {
+                                results.add(new KV<L, R>((L) rows[row], (R) p));
+                            }
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    /*
+     * Pairs each probe element with each matching build row, or with
+     * Possible.emptyValue() if there is none.
+     */
+    <P, K> Iterable<KV<P, Possible<B>>> leftOuter(final Iterable<P> probeSide, final F<P, K> probeKey) {
+        return new Iterable<KV<P, Possible<B>>>() {
+            @Override
+            public Iterator<KV<P, Possible<B>>> iterator() {
+                return new ProbeIterator<P, KV<P, Possible<B>>>(probeSide) {
+                    @Override
+                    void probe(P p, List<KV<P, Possible<B>>> results) {
+                        int row = firstMatch(probeKey.apply(p));
+                        if (row < 0) {
+                            results.add(new KV<P, Possible<B>>(p, Possible.<B>emptyValue()));
+                        }
+                        for (; row >= 0; row = nextMatch(row)) {
+                            results.add(new KV<P, Possible<B>>(p, Possible.value(buildRow(row))));
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    /*
+     * Returns each probe element that has at least one matching build row.
+     */
+    <P, K> Iterable<P> semi(final Iterable<P> probeSide, final F<P, K> probeKey) {
+        return new Iterable<P>() {
+            @Override
+            public Iterator<P> iterator() {
+                return new ProbeIterator<P, P>(probeSide) {
+                    @Override
+                    void probe(P p, List<P> results) {
+                        if (firstMatch(probeKey.apply(p)) >= 0) {
+                            results.add(p);
+                        }
+                    }
+                };
+            }
+        };
+    }
+}
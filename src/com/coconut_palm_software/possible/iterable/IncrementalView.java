@@ -0,0 +1,461 @@
+package com.coconut_palm_software.possible.iterable;
+
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A FluentIterable pipeline that stays up to date as its source changes.  Instead of
+ * rerunning every stage, {@link #insert(Object)} and {@link #remove(Object)} push the
+ * change through each transformAndConcat stage and into each registered aggregate,
+ * so a refresh costs time proportional to the size of the change.
+ * <p>
+ * <code>
+ *	IncrementalView&lt;String, String&gt; words = iterateOver(lines).incremental()
+ *			.transformAndConcat(new ConvertLineToWordList());
+ *	IncrementalView.Aggregate&lt;Map&lt;String, Long&gt;&gt; wordCounts = words.countBy(new Identity());
+ *	words.insert(newLine).remove(oldLine);
+ *	wordCounts.value();
+ * </code>
+ * <p>
+ * Functions must be deterministic: removing a source element removes exactly the
+ * results its functions produced when it was inserted.  Views are not thread-safe.
+ *
+ * @param <S> The type of the source elements
+ * @param <R> The type of this view's elements
+ */
+public class IncrementalView<S, R> implements Iterable<R> {
+
+    /*
+     * Receives the changes to a view's contents.
+     */
+    interface Listener<T> {
+        void added(T t);
+        void removed(T t);
+    }
+
+    /**
+     * The current result of an invertible reduction over a view.
+     *
+     * @param <A> The result type
+     */
+    public static abstract class Aggregate<A> {
+        /**
+         * @return the reduction's current value.
+         */
+        public abstract A value();
+    }
+
+    /*
+     * A multiset that keeps, per distinct element, the equal instances that were
+     * actually added, so iteration and replay return exactly what was inserted.
+     * Adding an occurrence takes O(1) time; removing one takes time proportional to
+     * the number of equal instances held.  Iteration returns equal elements together,
+     * in the order each was first added.  The Collection interface is read-only.
+     */
+    private static final class Bag<T> extends AbstractCollection<T> {
+        // ArrayDeque can't hold null
+        private static final Object NULL = new Object();
+
+        private final LinkedHashMap<T, ArrayDeque<Object>> instances = new LinkedHashMap<T, ArrayDeque<Object>>();
+        private int size = 0;
+
+        void addOne(T t) {
+            ArrayDeque<Object> equal = instances.get(t);
+            if (equal == null) {
+                equal = new ArrayDeque<Object>(2);
+                instances.put(t, equal);
+            }
+            equal.addLast(t == null ? NULL : t);
+            ++size;
+        }
+
+        /*
+         * Remove t itself if this bag holds that instance, otherwise the earliest
+         * added instance equal to t, and return the instance removed.
+         */
+        @SuppressWarnings("unchecked")
+        T removeOne(T t) {
+            ArrayDeque<Object> equal = instances.get(t);
+            if (equal == null) {
+                throw new NoSuchElementException();
+            }
+            Object removed = null;
+            for (Iterator<Object> i = equal.descendingIterator(); i.hasNext();) {
+                Object instance = i.next();
+                if (instance == t) {
+                    i.remove();
+                    removed = instance;
+                    break;
+                }
+            }
+            if (removed == null) {
+                removed = equal.removeFirst();
+            }
+            if (equal.isEmpty()) {
+                instances.remove(t);
+            }
+            --size;
+            return removed == NULL ? null : (T) removed;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return instances.containsKey(o);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            final Iterator<ArrayDeque<Object>> groups = instances.values().iterator();
+            return new Iterator<T>() {
+                private Iterator<Object> current = null;
+
+                @Override
+                public boolean hasNext() {
+                    return (current != null && current.hasNext()) || groups.hasNext();
+                }
+
+                @SuppressWarnings("unchecked")
+                @Override
+                public T next() {
+                    if (current == null || !current.hasNext()) {
+                        if (!groups.hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        current = groups.next().iterator();
+                    }
+                    Object instance = current.next();
+                    return instance == NULL ? null : (T) instance;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    private final IncrementalView<S, S> root;
+    private final Bag<R> elements = new Bag<R>();
+    private final List<Listener<R>> listeners = new ArrayList<Listener<R>>();
+
+    @SuppressWarnings("unchecked")
+    private IncrementalView(IncrementalView<S, S> root) {
+        this.root = root == null ? (IncrementalView<S, S>) this : root;
+    }
+
+    /**
+     * Create a view over a snapshot of source.  Later changes to the source must be
+     * reported using {@link #insert(Object)} and {@link #remove(Object)}.
+     *
+     * @param source The initial source elements.
+     * @param <S> The type of the source elements.
+     * @return a view whose contents are source's elements.
+     */
+    public static <S> IncrementalView<S, S> incrementalOver(Iterable<S> source) {
+        IncrementalView<S, S> view = new IncrementalView<S, S>(null);
+        for (S s : source) {
+            view.added(s);
+        }
+        return view;
+    }
+
+    private void added(R r) {
+        elements.addOne(r);
+        for (Listener<R> listener : listeners) {
+            listener.added(r);
+        }
+    }
+
+    private void removed(R r) {
+        if (!elements.contains(r)) {
+            throw new IllegalArgumentException("Cannot remove an element that is not in the view: " + r);
+        }
+        // Listeners see the instance that was inserted, so aggregates undo exactly what they added
+        R removed = elements.removeOne(r);
+        for (Listener<R> listener : listeners) {
+            listener.removed(removed);
+        }
+    }
+
+    private <L extends Listener<R>> L listen(L listener) {
+        for (R r : elements) {
+            listener.added(r);
+        }
+        listeners.add(listener);
+        return listener;
+    }
+
+    /**
+     * Add a stage that replaces each element with the results of func.
+     *
+     * @param func The function to apply.
+     * @param <Dest> The type of the new stage's elements.
+     * @param <IntermediateResults> The type func returns.
+     * @return a view over the concatenated results of func.
+     */
+    public <Dest, IntermediateResults extends Iterable<Dest>>
+        IncrementalView<S, Dest> transformAndConcat(final F<R, IntermediateResults> func)
+    {
+        final IncrementalView<S, Dest> stage = new IncrementalView<S, Dest>(root);
+        listen(new Listener<R>() {
+            @Override
+            public void added(R r) {
+                for (Dest d : func.apply(r)) {
+                    stage.added(d);
+                }
+            }
+
+            @Override
+            public void removed(R r) {
+                for (Dest d : func.apply(r)) {
+                    stage.removed(d);
+                }
+            }
+        });
+        return stage;
+    }
+
+    /**
+     * Add s to the source and update every stage and aggregate derived from it.
+     *
+     * @param s The source element to add.
+     * @return this view, to allow call chaining.
+     */
+    public IncrementalView<S, R> insert(S s) {
+        root.added(s);
+        return this;
+    }
+
+    /**
+     * Remove one occurrence of s from the source and update every stage and aggregate
+     * derived from it.  If the source holds several elements equal to s, s itself is
+     * removed when it was inserted, otherwise the earliest inserted equal element.
+     *
+     * @param s The source element to remove.
+     * @return this view, to allow call chaining.
+     * @throws IllegalArgumentException if s is not in the source.
+     */
+    public IncrementalView<S, R> remove(S s) {
+        root.removed(s);
+        return this;
+    }
+
+    public IncrementalView<S, R> insertAll(Iterable<S> ss) {
+        for (S s : ss) {
+            root.added(s);
+        }
+        return this;
+    }
+
+    public IncrementalView<S, R> removeAll(Iterable<S> ss) {
+        for (S s : ss) {
+            root.removed(s);
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of elements in this view, counting duplicates.
+     */
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * Iterate over this view's elements.  Equal elements are returned together.
+     *
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<R> iterator() {
+        return elements.iterator();
+    }
+
+    /**
+     * Maintain a reduction whose effect can be undone.  subtract must invert add:
+     * subtract(add(a, r), r) must equal a.
+     *
+     * @param add Folds an added element into the accumulator.
+     * @param subtract Removes a removed element from the accumulator.
+     * @param initialValue The value of the reduction over no elements.
+     * @param <A> The accumulator type.
+     * @return the live reduction.
+     */
+    public <A> Aggregate<A> reduce(final F2<A, R, A> add, final F2<A, R, A> subtract, A initialValue) {
+        class Reduction extends Aggregate<A> implements Listener<R> {
+            private A accumulator;
+
+            Reduction(A initialValue) {
+                this.accumulator = initialValue;
+            }
+
+            @Override
+            public A value() {
+                return accumulator;
+            }
+
+            @Override
+            public void added(R r) {
+                accumulator = add.apply(accumulator, r);
+            }
+
+            @Override
+            public void removed(R r) {
+                accumulator = subtract.apply(accumulator, r);
+            }
+        }
+        return listen(new Reduction(initialValue));
+    }
+
+    /**
+     * @return the live number of elements in this view.
+     */
+    public Aggregate<Long> count() {
+        class Count extends Aggregate<Long> implements Listener<R> {
+            private long count = 0;
+
+            @Override
+            public Long value() {
+                return count;
+            }
+
+            @Override
+            public void added(R r) {
+                ++count;
+            }
+
+            @Override
+            public void removed(R r) {
+                --count;
+            }
+        }
+        return listen(new Count());
+    }
+
+    /**
+     * Maintain the sum of value over this view's elements.  Floating point rounding
+     * may accumulate over many removals.
+     *
+     * @param value Computes each element's value.
+     * @return the live sum.
+     */
+    public Aggregate<Double> sum(final DoubleF<R> value) {
+        class Sum extends Aggregate<Double> implements Listener<R> {
+            private double sum = 0;
+
+            @Override
+            public Double value() {
+                return sum;
+            }
+
+            @Override
+            public void added(R r) {
+                sum += value.apply(r);
+            }
+
+            @Override
+            public void removed(R r) {
+                sum -= value.apply(r);
+            }
+        }
+        return listen(new Sum());
+    }
+
+    /**
+     * Maintain the number of elements with each key.  Keys whose count drops to zero
+     * are removed.
+     *
+     * @param keyFunction Computes each element's key.
+     * @param <K> The key type.
+     * @return the live counts, as an unmodifiable Map.
+     */
+    public <K> Aggregate<Map<K, Long>> countBy(final F<R, K> keyFunction) {
+        class CountBy extends Aggregate<Map<K, Long>> implements Listener<R> {
+            private final Map<K, Long> counts = new LinkedHashMap<K, Long>();
+            private final Map<K, Long> view = Collections.unmodifiableMap(counts);
+
+            @Override
+            public Map<K, Long> value() {
+                return view;
+            }
+
+            @Override
+            public void added(R r) {
+                K key = keyFunction.apply(r);
+                Long count = counts.get(key);
+                counts.put(key, count == null ? 1L : count + 1);
+            }
+
+            @Override
+            public void removed(R r) {
+                K key = keyFunction.apply(r);
+                long count = counts.get(key);
+                if (count == 1) {
+                    counts.remove(key);
+                } else {
+                    counts.put(key, count - 1);
+                }
+            }
+        }
+        return listen(new CountBy());
+    }
+
+    /**
+     * Maintain the elements grouped by key.  Groups that become empty are removed.
+     * Each group is a multiset of the inserted instances, so an insert or remove
+     * doesn't scan the elements that merely share its key; equal elements within a
+     * group are returned together.
+     *
+     * @param keyFunction Computes each element's key.
+     * @param <K> The key type.
+     * @return the live groups, as an unmodifiable Map of unmodifiable Collections.
+     */
+    public <K> Aggregate<Map<K, Collection<R>>> groupBy(final F<R, K> keyFunction) {
+        class GroupBy extends Aggregate<Map<K, Collection<R>>> implements Listener<R> {
+            private final Map<K, Bag<R>> groups = new LinkedHashMap<K, Bag<R>>();
+            private final Map<K, Collection<R>> view =
+                    Collections.<K, Collection<R>>unmodifiableMap(groups);
+
+            @Override
+            public Map<K, Collection<R>> value() {
+                return view;
+            }
+
+            @Override
+            public void added(R r) {
+                K key = keyFunction.apply(r);
+                Bag<R> group = groups.get(key);
+                if (group == null) {
+                    group = new Bag<R>();
+                    groups.put(key, group);
+                }
+                group.addOne(r);
+            }
+
+            @Override
+            public void removed(R r) {
+                K key = keyFunction.apply(r);
+                Bag<R> group = groups.get(key);
+                group.removeOne(r);
+                if (group.isEmpty()) {
+                    groups.remove(key);
+                }
+            }
+        }
+        return listen(new GroupBy());
+    }
+}
@@ -0,0 +1,119 @@
+package com.coconut_palm_software.possible.iterable;
+
+/**
+ * An open-addressing (linear probing) hash table that assigns each distinct key a
+ * dense id in insertion order.  Callers keep per-key state in arrays indexed by id,
+ * which avoids allocating a Map.Entry and a boxed value for every key.
+ * <p>
+ * Not thread-safe.  Null keys are supported.
+ */
+final class KeyIndex {
+    private static final int MIN_CAPACITY = 16;
+
+    private Object[] keys;
+    private int[] hashes;
+    private int[] slots;        // id + 1, or 0 for an empty slot
+    private int size = 0;
+
+    KeyIndex(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        slots = new int[capacity];
+        keys = new Object[Math.max(expectedSize, MIN_CAPACITY / 2)];
+        hashes = new int[keys.length];
+    }
+
+    KeyIndex() {
+        this(0);
+    }
+
+    int size() {
+        return size;
+    }
+
+    Object key(int id) {
+        return keys[id];
+    }
+
+    static int hash(Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    /*
+     * Return the id of key, or -1 if it is not present.
+     */
+    int find(Object key) {
+        int hash = hash(key);
+        int mask = slots.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                return -1;
+            }
+            int id = slot - 1;
+            if (hashes[id] == hash && equal(keys[id], key)) {
+                return id;
+            }
+        }
+    }
+
+    /*
+     * Return the id of key if it is already present.  Otherwise, add it and return
+     * the complement (~id) of its new id, so callers can tell new keys apart.
+     */
+    int addOrFind(Object key) {
+        int hash = hash(key);
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        for (; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                break;
+            }
+            int id = slot - 1;
+            if (hashes[id] == hash && equal(keys[id], key)) {
+                return id;
+            }
+        }
+        int id = size++;
+        if (id == keys.length) {
+            int newLength = keys.length * 2;
+            Object[] newKeys = new Object[newLength];
+            System.arraycopy(keys, 0, newKeys, 0, id);
+            keys = newKeys;
+            int[] newHashes = new int[newLength];
+            System.arraycopy(hashes, 0, newHashes, 0, id);
+            hashes = newHashes;
+        }
+        keys[id] = key;
+        hashes[id] = hash;
+        slots[i] = id + 1;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return ~id;
+    }
+
+    private void rehash() {
+        int[] newSlots = new int[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hashes[id] & mask;
+            while (newSlots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            newSlots[i] = id + 1;
+        }
+        slots = newSlots;
+    }
+}
@@ -0,0 +1,5 @@
+package com.coconut_palm_software.possible.iterable;
+
+public interface LongF<A> {
+    long apply(A a);
+}
@@ -0,0 +1,154 @@
+package com.coconut_palm_software.possible.iterable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.coconut_palm_software.possible.Nulls;
+
+/**
+ * A lazy k-way merge of Iterables that are each sorted by the same Comparator.  A
+ * binary heap holds the head of each source, so producing n elements takes
+ * O(n log k) time and O(k) memory.  Equal elements from different sources are
+ * returned in source order unless duplicates are collapsed.
+ *
+ * @param <T> The element type
+ */
+final class MergedIterable<T> implements Iterable<T> {
+    private final List<Iterable<? extends T>> sources;
+    private final Comparator<? super T> comparator;
+    private final boolean collapseDuplicates;
+
+    MergedIterable(Iterable<? extends Iterable<? extends T>> sources, Comparator<? super T> comparator,
+            boolean collapseDuplicates)
+    {
+        Nulls.assertNotNull(sources, "sources");
+        Nulls.assertNotNull(comparator, "comparator");
+        this.sources = new ArrayList<Iterable<? extends T>>();
+        for (Iterable<? extends T> source : sources) {
+            this.sources.add(source);
+        }
+        this.comparator = comparator;
+        this.collapseDuplicates = collapseDuplicates;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            // heap[i] is the index of a source; heads[source] is its current element
+            private final int[] heap = new int[sources.size()];
+            private final Object[] heads = new Object[sources.size()];
+            private final List<Iterator<? extends T>> iterators = new ArrayList<Iterator<? extends T>>(sources.size());
+            private int size = 0;
+            private boolean emitted = false;
+            private T last = null;
+
+            {
+                for (int source = 0; source < sources.size(); source++) {
+                    Iterator<? extends T> iterator = sources.get(source).iterator();
+                    iterators.add(iterator);
+                    if (iterator.hasNext()) {
+                        heads[source] = iterator.next();
+                        heap[size] = source;
+                        siftUp(size++);
+                    }
+                }
+                skipDuplicates();
+            }
+
+            @SuppressWarnings("unchecked")
+            private boolean less(int i, int j) {
+                int a = heap[i];
+                int b = heap[j];
+                int order = comparator.compare((T) heads[a], (T) heads[b]);
+                return order < 0 || (order == 0 && a < b);
+            }
+
+            private void swap(int i, int j) {
+                int source = heap[i];
+                heap[i] = heap[j];
+                heap[j] = source;
+            }
+
+            private void siftUp(int i) {
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!less(i, parent)) {
+                        return;
+                    }
+                    swap(i, parent);
+                    i = parent;
+                }
+            }
+
+            private void siftDown(int i) {
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        return;
+                    }
+                    if (child + 1 < size && less(child + 1, child)) {
+                        ++child;
+                    }
+                    if (!less(child, i)) {
+                        return;
+                    }
+                    swap(i, child);
+                    i = child;
+                }
+            }
+
+            /* Replace the smallest head with the next element of its source */
+            private void advanceTop() {
+                int source = heap[0];
+                Iterator<? extends T> iterator = iterators.get(source);
+                if (iterator.hasNext()) {
+                    heads[source] = iterator.next();
+                } else {
+                    heads[source] = null;
+                    heap[0] = heap[--size];
+                }
+                siftDown(0);
+            }
+
+            @SuppressWarnings("unchecked")
+            private void skipDuplicates() {
+                if (!collapseDuplicates || !emitted) {
+                    return;
+                }
+                while (size > 0 && comparator.compare((T) heads[heap[0]], last) == 0) {
+                    advanceTop();
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return size > 0;
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public T next() {
+                if (size == 0) {
+                    throw new NoSuchElementException();
+                }
+                T result = (T) heads[heap[0]];
+                advanceTop();
+                last = result;
+                emitted = true;
+                skipDuplicates();
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,65 @@
+package com.coconut_palm_software.possible.iterable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers for FluentIterable operators that split their source into chunks, process
+ * the chunks on an ExecutorService, and merge the partial results.
+ */
+final class Parallel {
+    private Parallel() {}
+
+    /**
+     * Split source into about one chunk per available processor.  RandomAccess lists
+     * are split into subList views; other sources are copied once.
+     */
+    @SuppressWarnings("unchecked")
+    static <R> List<List<R>> chunks(Iterable<R> source) {
+        List<R> elements;
+        if (source instanceof List && source instanceof RandomAccess) {
+            elements = (List<R>) source;
+        } else {
+            elements = CollectionFactory.arrayListFrom(source);
+        }
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int chunkSize = Math.max(1, (elements.size() + parallelism - 1) / parallelism);
+        List<List<R>> result = new ArrayList<List<R>>(parallelism);
+        for (int from = 0; from < elements.size(); from += chunkSize) {
+            result.add(elements.subList(from, Math.min(elements.size(), from + chunkSize)));
+        }
+        return result;
+    }
+
+    /**
+     * Run tasks on executor and return their results in task order.  A task's
+     * unchecked exception is rethrown as-is.
+     */
+    static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) {
+        try {
+            List<Future<T>> futures = executor.invokeAll(tasks);
+            List<T> results = new ArrayList<T>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for parallel tasks", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Parallel task failed", cause);
+        }
+    }
+}
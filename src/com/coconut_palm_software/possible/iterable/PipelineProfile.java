@@ -0,0 +1,168 @@
+package com.coconut_palm_software.possible.iterable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects per-stage statistics for a FluentIterable pipeline.  Profiling is
+ * opt-in: attach a profile using {@link FluentIterable#profiledBy(PipelineProfile)}
+ * and every stage derived from that FluentIterable records a {@link Stage}.
+ * Unprofiled pipelines pay a single null check per stage.
+ * <p>
+ * <code>
+ *	PipelineProfile profile = new PipelineProfile();
+ *	List&lt;Tuple&lt;String&gt;&gt; trigrams = iterateOver(linesInFile)
+ *			.profiledBy(profile)
+ *			.transformAndConcat(new ConvertLineToWordList())
+ *			.transformAndConcat(new ConvertWordsToTrigrams())
+ *			.result();
+ *	System.out.println(profile.summary());
+ * </code>
+ * <p>
+ * A {@link Listener} receives each Stage as soon as it completes, so stages can be
+ * forwarded to an external recorder such as a JDK Flight Recorder event.
+ */
+public class PipelineProfile {
+
+    /**
+     * Receives stage statistics as each stage completes.  Called on the thread
+     * that ran the stage.
+     */
+    public interface Listener {
+        void stageCompleted(Stage stage);
+    }
+
+    /**
+     * Statistics for one completed pipeline stage.
+     */
+    public static final class Stage {
+        private final String operation;
+        private final String function;
+        private final long elementsIn;
+        private final long elementsOut;
+        private final long elapsedNanos;
+        private final String resultContainer;
+        private final long resultContainerSize;
+
+        Stage(String operation, Object function, long elementsIn, long elementsOut,
+                long elapsedNanos, Object resultContainer)
+        {
+            this.operation = operation;
+            this.function = function == null ? "" : function.getClass().getName();
+            this.elementsIn = elementsIn;
+            this.elementsOut = elementsOut;
+            this.elapsedNanos = elapsedNanos;
+            this.resultContainer = resultContainer == null ? "" : resultContainer.getClass().getName();
+            this.resultContainerSize = sizeOf(resultContainer);
+        }
+
+        private static long sizeOf(Object container) {
+            if (container instanceof Collection) {
+                return ((Collection<?>) container).size();
+            }
+            if (container instanceof Map) {
+                return ((Map<?, ?>) container).size();
+            }
+            return -1;
+        }
+
+        /** @return the FluentIterable operation, e.g. "transformAndConcat". */
+        public String operation() { return operation; }
+
+        /** @return the class name of the function the stage applied. */
+        public String function() { return function; }
+
+        /** @return the number of elements the stage consumed. */
+        public long elementsIn() { return elementsIn; }
+
+        /** @return the number of elements the stage produced. */
+        public long elementsOut() { return elementsOut; }
+
+        /** @return the stage's wall-clock time in nanoseconds. */
+        public long elapsedNanos() { return elapsedNanos; }
+
+        /** @return the class name of the stage's result. */
+        public String resultContainer() { return resultContainer; }
+
+        /** @return the size of the stage's result if it is a Collection or Map, or -1. */
+        public long resultContainerSize() { return resultContainerSize; }
+
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return operation + "(" + function + "): in=" + elementsIn + " out=" + elementsOut
+                    + " elapsed=" + (elapsedNanos / 1000) + "us result=" + resultContainer
+                    + (resultContainerSize >= 0 ? "[" + resultContainerSize + "]" : "");
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<Stage>();
+    private final Listener listener;
+
+    public PipelineProfile() {
+        this(null);
+    }
+
+    /**
+     * @param listener A listener to notify as each stage completes, or null.
+     */
+    public PipelineProfile(Listener listener) {
+        this.listener = listener;
+    }
+
+    void record(Stage stage) {
+        synchronized (stages) {
+            stages.add(stage);
+        }
+        if (listener != null) {
+            listener.stageCompleted(stage);
+        }
+    }
+
+    /**
+     * @return the stages recorded so far, in completion order.
+     */
+    public List<Stage> stages() {
+        synchronized (stages) {
+            return Collections.unmodifiableList(new ArrayList<Stage>(stages));
+        }
+    }
+
+    /**
+     * @return the total elapsed time of all recorded stages in nanoseconds.
+     */
+    public long totalElapsedNanos() {
+        return totalElapsedNanos(stages());
+    }
+
+    private static long totalElapsedNanos(List<Stage> stages) {
+        long total = 0;
+        for (Stage stage : stages) {
+            total += stage.elapsedNanos();
+        }
+        return total;
+    }
+
+    /**
+     * @return a human-readable summary with one line per recorded stage.
+     */
+    public String summary() {
+        List<Stage> snapshot = stages();
+        long total = totalElapsedNanos(snapshot);
+        StringBuilder result = new StringBuilder();
+        result.append(snapshot.size()).append(" stage(s), ")
+              .append(total / 1000).append("us total\n");
+        for (int i = 0; i < snapshot.size(); i++) {
+            Stage stage = snapshot.get(i);
+            long percent = total == 0 ? 0 : stage.elapsedNanos() * 100 / total;
+            result.append("  ").append(i + 1).append(". ").append(stage)
+                  .append(" (").append(percent).append("%)\n");
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,311 @@
+package com.coconut_palm_software.possible.iterable;
+
+import java.util.Arrays;
+
+import com.coconut_palm_software.possible.Possible;
+
+/**
+ * Bulk operations over the primitive arrays returned by {@link CollectionFactory}'s
+ * array() methods.
+ * <p>
+ * sum, min, max and firstIndexOf use the jdk.incubator.vector API when the runtime
+ * provides it: JDK 17 or later, started with --add-modules jdk.incubator.vector, on
+ * a CPU with at least 128-bit vectors.  Otherwise, or when the system property
+ * possible.primitiveArrays.scalar is true, they fall back to {@link ScalarKernels}.
+ * The Vector API implementation is compiled from the src-vector source set, which
+ * the "vector" Maven profile builds on JDK 17 and later.  count and filter call an
+ * arbitrary predicate per element, which can't be vectorized, so they are always
+ * scalar loops; count is unrolled into four independent counters.
+ * <p>
+ * Vectorized and scalar double sums add in different orders, so they may differ in
+ * the last bits.  PrimitiveArraysBenchmark, in the benchmark source set, compares
+ * the two implementations; build it with the "benchmark" and "vector" profiles.
+ * <p>
+ * Operations that have no result for an empty array return {@link Possible#emptyValue()}.
+ */
+public class PrimitiveArrays {
+
+    public interface IntPredicate {
+        boolean apply(int value);
+    }
+
+    public interface LongPredicate {
+        boolean apply(long value);
+    }
+
+    public interface DoublePredicate {
+        boolean apply(double value);
+    }
+
+    static final String SCALAR_PROPERTY = "possible.primitiveArrays.scalar";
+    private static final String VECTOR_KERNELS = "com.coconut_palm_software.possible.iterable.VectorKernels";
+
+    static final PrimitiveKernels KERNELS = loadKernels();
+
+    private static PrimitiveKernels loadKernels() {
+        if (!Boolean.getBoolean(SCALAR_PROPERTY)) {
+            try {
+                return (PrimitiveKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+            } catch (Exception e) {
+                // Not built with the vector profile, or the CPU's vectors are too narrow
+            } catch (LinkageError e) {
+                // A pre-17 runtime, or jdk.incubator.vector isn't resolved
+            }
+        }
+        return new ScalarKernels();
+    }
+
+    /**
+     * @return true if sum, min, max and firstIndexOf use the Vector API.
+     */
+    public static boolean vectorized() {
+        return !(KERNELS instanceof ScalarKernels);
+    }
+
+    /**
+     * @param a The array.
+     * @return the sum of the elements as a long, so it cannot overflow.
+     */
+    public static long sum(int[] a) {
+        return KERNELS.sum(a);
+    }
+
+    /**
+     * @param a The array.
+     * @return the smallest element, or Possible.emptyValue() if a is empty.
+     */
+    public static Possible<Integer> min(int[] a) {
+        if (a.length == 0) {
+            return Possible.emptyValue();
+        }
+        return Possible.value(KERNELS.min(a));
+    }
+
+    /**
+     * @param a The array.
+     * @return the largest element, or Possible.emptyValue() if a is empty.
+     */
+    public static Possible<Integer> max(int[] a) {
+        if (a.length == 0) {
+            return Possible.emptyValue();
+        }
+        return Possible.value(KERNELS.max(a));
+    }
+
+    /**
+     * @param a The array.
+     * @param predicate The condition to test.
+     * @return the number of elements that satisfy predicate.
+     */
+    public static int count(int[] a, IntPredicate predicate) {
+        int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            c0 += predicate.apply(a[i]) ? 1 : 0;
+            c1 += predicate.apply(a[i + 1]) ? 1 : 0;
+            c2 += predicate.apply(a[i + 2]) ? 1 : 0;
+            c3 += predicate.apply(a[i + 3]) ? 1 : 0;
+        }
+        for (; i < a.length; i++) {
+            c0 += predicate.apply(a[i]) ? 1 : 0;
+        }
+        return (c0 + c1) + (c2 + c3);
+    }
+
+    /**
+     * Compress the elements that satisfy predicate into a new array.  The write
+     * index advances without a branch, so the loop doesn't mispredict on
+     * unpredictable data.
+     *
+     * @param a The array.
+     * @param predicate The condition to test.
+     * @return a new array holding the elements that satisfy predicate, in order.
+     */
+    public static int[] filter(int[] a, IntPredicate predicate) {
+        int[] result = new int[a.length];
+        int n = 0;
+        for (int i = 0; i < a.length; i++) {
+            int value = a[i];
+            result[n] = value;
+            n += predicate.apply(value) ? 1 : 0;
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Find the first element equal to value.
+     *
+     * @param a The array.
+     * @param value The value to find, such as a sentinel.
+     * @return the index of the first match, or Possible.emptyValue() if there is none.
+     */
+    public static Possible<Integer> firstIndexOf(int[] a, int value) {
+        int index = KERNELS.firstIndexOf(a, value);
+        return index < 0 ? Possible.<Integer>emptyValue() : Possible.value(index);
+    }
+
+    /**
+     * @param a The array.
+     * @return the sum of the elements.
+     */
+    public static long sum(long[] a) {
+        return KERNELS.sum(a);
+    }
+
+    /**
+     * @param a The array.
+     * @return the smallest element, or Possible.emptyValue() if a is empty.
+     */
+    public static Possible<Long> min(long[] a) {
+        if (a.length == 0) {
+            return Possible.emptyValue();
+        }
+        return Possible.value(KERNELS.min(a));
+    }
+
+    /**
+     * @param a The array.
+     * @return the largest element, or Possible.emptyValue() if a is empty.
+     */
+    public static Possible<Long> max(long[] a) {
+        if (a.length == 0) {
+            return Possible.emptyValue();
+        }
+        return Possible.value(KERNELS.max(a));
+    }
+
+    /**
+     * @param a The array.
+     * @param predicate The condition to test.
+     * @return the number of elements that satisfy predicate.
+     */
+    public static int count(long[] a, LongPredicate predicate) {
+        int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            c0 += predicate.apply(a[i]) ? 1 : 0;
+            c1 += predicate.apply(a[i + 1]) ? 1 : 0;
+            c2 += predicate.apply(a[i + 2]) ? 1 : 0;
+            c3 += predicate.apply(a[i + 3]) ? 1 : 0;
+        }
+        for (; i < a.length; i++) {
+            c0 += predicate.apply(a[i]) ? 1 : 0;
+        }
+        return (c0 + c1) + (c2 + c3);
+    }
+
+    /**
+     * Compress the elements that satisfy predicate into a new array.  The write
+     * index advances without a branch, so the loop doesn't mispredict on
+     * unpredictable data.
+     *
+     * @param a The array.
+     * @param predicate The condition to test.
+     * @return a new array holding the elements that satisfy predicate, in order.
+     */
+    public static long[] filter(long[] a, LongPredicate predicate) {
+        long[] result = new long[a.length];
+        int n = 0;
+        for (int i = 0; i < a.length; i++) {
+            long value = a[i];
+            result[n] = value;
+            n += predicate.apply(value) ? 1 : 0;
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Find the first element equal to value.
+     *
+     * @param a The array.
+     * @param value The value to find, such as a sentinel.
+     * @return the index of the first match, or Possible.emptyValue() if there is none.
+     */
+    public static Possible<Integer> firstIndexOf(long[] a, long value) {
+        int index = KERNELS.firstIndexOf(a, value);
+        return index < 0 ? Possible.<Integer>emptyValue() : Possible.value(index);
+    }
+
+    /**
+     * @param a The array.
+     * @return the sum of the elements, or 0 if a is empty.
+     */
+    public static double sum(double[] a) {
+        return KERNELS.sum(a);
+    }
+
+    /**
+     * @param a The array.
+     * @return the smallest element, or Possible.emptyValue() if a is empty.
+     */
+    public static Possible<Double> min(double[] a) {
+        if (a.length == 0) {
+            return Possible.emptyValue();
+        }
+        return Possible.value(KERNELS.min(a));
+    }
+
+    /**
+     * @param a The array.
+     * @return the largest element, or Possible.emptyValue() if a is empty.
+     */
+    public static Possible<Double> max(double[] a) {
+        if (a.length == 0) {
+            return Possible.emptyValue();
+        }
+        return Possible.value(KERNELS.max(a));
+    }
+
+    /**
+     * @param a The array.
+     * @param predicate The condition to test.
+     * @return the number of elements that satisfy predicate.
+     */
+    public static int count(double[] a, DoublePredicate predicate) {
+        int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            c0 += predicate.apply(a[i]) ? 1 : 0;
+            c1 += predicate.apply(a[i + 1]) ? 1 : 0;
+            c2 += predicate.apply(a[i + 2]) ? 1 : 0;
+            c3 += predicate.apply(a[i + 3]) ? 1 : 0;
+        }
+        for (; i < a.length; i++) {
+            c0 += predicate.apply(a[i]) ? 1 : 0;
+        }
+        return (c0 + c1) + (c2 + c3);
+    }
+
+    /**
+     * Compress the elements that satisfy predicate into a new array.  The write
+     * index advances without a branch, so the loop doesn't mispredict on
+     * unpredictable data.
+     *
+     * @param a The array.
+     * @param predicate The condition to test.
+     * @return a new array holding the elements that satisfy predicate, in order.
+     */
+    public static double[] filter(double[] a, DoublePredicate predicate) {
+        double[] result = new double[a.length];
+        int n = 0;
+        for (int i = 0; i < a.length; i++) {
+            double value = a[i];
+            result[n] = value;
+            n += predicate.apply(value) ? 1 : 0;
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Find the first element equal to value.  Elements are compared as by
+     * Double.compare, so NaN finds NaN and 0.0 does not find -0.0.
+     *
+     * @param a The array.
+     * @param value The value to find, such as a sentinel.
+     * @return the index of the first match, or Possible.emptyValue() if there is none.
+     */
+    public static Possible<Integer> firstIndexOf(double[] a, double value) {
+        int index = KERNELS.firstIndexOf(a, value);
+        return index < 0 ? Possible.<Integer>emptyValue() : Possible.value(index);
+    }
+}
@@ -0,0 +1,27 @@
+package com.coconut_palm_software.possible.iterable;
+
+/**
+ * The loops behind {@link PrimitiveArrays}.  {@link ScalarKernels} runs on every
+ * JVM; a Vector API implementation is used instead when the runtime supports it.
+ * <p>
+ * min and max are only called with non-empty arrays.  firstIndexOf returns -1 when
+ * there is no match.
+ */
+interface PrimitiveKernels {
+    long sum(int[] a);
+    int min(int[] a);
+    int max(int[] a);
+    int firstIndexOf(int[] a, int value);
+
+    long sum(long[] a);
+    long min(long[] a);
+    long max(long[] a);
+    int firstIndexOf(long[] a, long value);
+
+    double sum(double[] a);
+    double min(double[] a);
+    double max(double[] a);
+
+    /* Elements are compared as by Double.compare */
+    int firstIndexOf(double[] a, double value);
+}
@@ -0,0 +1,152 @@
+package com.coconut_palm_software.possible.iterable;
+
+/**
+ * Plain Java loops, used when the Vector API is unavailable.  Loops that C2 can
+ * auto-vectorize (int sum, int and double min/max) are kept plain.  The long and
+ * double sums and long min/max carry a dependency from one iteration to the next,
+ * so they are unrolled into four independent accumulators that the CPU can
+ * overlap.  The double sum therefore adds in a different order than a plain loop
+ * would, and may differ from it in the last bits.
+ */
+final class ScalarKernels implements PrimitiveKernels {
+
+    @Override
+    public long sum(int[] a) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public int min(int[] a) {
+        int m = a[0];
+        for (int i = 1; i < a.length; i++) {
+            m = Math.min(m, a[i]);
+        }
+        return m;
+    }
+
+    @Override
+    public int max(int[] a) {
+        int m = a[0];
+        for (int i = 1; i < a.length; i++) {
+            m = Math.max(m, a[i]);
+        }
+        return m;
+    }
+
+    @Override
+    public int firstIndexOf(int[] a, int value) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public long sum(long[] a) {
+        long s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            s0 += a[i];
+            s1 += a[i + 1];
+            s2 += a[i + 2];
+            s3 += a[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public long min(long[] a) {
+        long m0 = a[0], m1 = a[0], m2 = a[0], m3 = a[0];
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            m0 = Math.min(m0, a[i]);
+            m1 = Math.min(m1, a[i + 1]);
+            m2 = Math.min(m2, a[i + 2]);
+            m3 = Math.min(m3, a[i + 3]);
+        }
+        for (; i < a.length; i++) {
+            m0 = Math.min(m0, a[i]);
+        }
+        return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+    }
+
+    @Override
+    public long max(long[] a) {
+        long m0 = a[0], m1 = a[0], m2 = a[0], m3 = a[0];
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            m0 = Math.max(m0, a[i]);
+            m1 = Math.max(m1, a[i + 1]);
+            m2 = Math.max(m2, a[i + 2]);
+            m3 = Math.max(m3, a[i + 3]);
+        }
+        for (; i < a.length; i++) {
+            m0 = Math.max(m0, a[i]);
+        }
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+    }
+
+    @Override
+    public int firstIndexOf(long[] a, long value) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public double sum(double[] a) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < a.length; i += 4) {
+            s0 += a[i];
+            s1 += a[i + 1];
+            s2 += a[i + 2];
+            s3 += a[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public double min(double[] a) {
+        double m = a[0];
+        for (int i = 1; i < a.length; i++) {
+            m = Math.min(m, a[i]);
+        }
+        return m;
+    }
+
+    @Override
+    public double max(double[] a) {
+        double m = a[0];
+        for (int i = 1; i < a.length; i++) {
+            m = Math.max(m, a[i]);
+        }
+        return m;
+    }
+
+    @Override
+    public int firstIndexOf(double[] a, double value) {
+        long bits = Double.doubleToLongBits(value);
+        for (int i = 0; i < a.length; i++) {
+            if (Double.doubleToLongBits(a[i]) == bits) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,256 @@
+package com.coconut_palm_software.possible.iterable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A result container that holds at most a fixed number of elements in memory.  Once
+ * the budget is reached, the buffered elements are serialized to a temporary file
+ * (a "segment") and the buffer starts over.  Iterating streams the segments back in
+ * order, deserializing the next segment on a background thread while the current one
+ * is consumed, followed by whatever is still buffered.
+ * <p>
+ * Elements must be Serializable once the budget is exceeded.  Call {@link #close()}
+ * to delete the segment files when the results are no longer needed.  A closed
+ * container throws IllegalStateException rather than appearing empty.
+ *
+ * @param <T> The element type
+ */
+public class SpillingIterable<T> implements Iterable<T>, Closeable {
+
+    /**
+     * The in-memory budget used by the 0-arg constructor.
+     */
+    public static final int DEFAULT_MAX_ELEMENTS_IN_MEMORY = 1 << 16;
+
+    private static final int IO_BUFFER_SIZE = 1 << 16;
+    private static final int RESET_INTERVAL = 1024;
+
+    private final int maxElementsInMemory;
+    private final List<File> segments = new ArrayList<File>();
+    private final List<Integer> segmentSizes = new ArrayList<Integer>();
+    private List<T> buffer = new ArrayList<T>();
+    private long size = 0;
+    private boolean closed = false;
+
+    public SpillingIterable() {
+        this(DEFAULT_MAX_ELEMENTS_IN_MEMORY);
+    }
+
+    /**
+     * @param maxElementsInMemory The number of elements to buffer before spilling to disk.
+     */
+    public SpillingIterable(int maxElementsInMemory) {
+        if (maxElementsInMemory < 1) {
+            throw new IllegalArgumentException("'maxElementsInMemory' must be positive");
+        }
+        this.maxElementsInMemory = maxElementsInMemory;
+    }
+
+    /**
+     * Append t, spilling the in-memory buffer to disk first if it is full.
+     *
+     * @param t The element to add.
+     * @return true
+     */
+    public boolean add(T t) {
+        assertOpen();
+        if (buffer.size() >= maxElementsInMemory) {
+            spill();
+        }
+        buffer.add(t);
+        ++size;
+        return true;
+    }
+
+    /**
+     * @return the total number of elements added.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the number of segments written to disk.
+     */
+    public int spilledSegments() {
+        return segments.size();
+    }
+
+    private void spill() {
+        File segment = null;
+        try {
+            segment = File.createTempFile("fluent-spill", ".seg");
+            ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(segment), IO_BUFFER_SIZE));
+            try {
+                for (int i = 0; i < buffer.size(); i++) {
+                    out.writeObject(buffer.get(i));
+                    if (i % RESET_INTERVAL == RESET_INTERVAL - 1) {
+                        // Don't let the stream's back-reference table pin every element
+                        out.reset();
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            if (segment != null) {
+                segment.delete();
+            }
+            throw new IllegalStateException("Could not spill results to disk", e);
+        }
+        segments.add(segment);
+        segmentSizes.add(buffer.size());
+        buffer = new ArrayList<T>();
+    }
+
+    private static List<Object> readSegment(File segment, int count) {
+        try {
+            ObjectInputStream in = new ObjectInputStream(
+                    new BufferedInputStream(new FileInputStream(segment), IO_BUFFER_SIZE));
+            try {
+                List<Object> result = new ArrayList<Object>(count);
+                for (int i = 0; i < count; i++) {
+                    result.add(in.readObject());
+                }
+                return result;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read spilled results from " + segment, e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Could not read spilled results from " + segment, e);
+        }
+    }
+
+    private static Future<List<Object>> readAhead(final File segment, final int count) {
+        FutureTask<List<Object>> task = new FutureTask<List<Object>>(new Callable<List<Object>>() {
+            @Override
+            public List<Object> call() {
+                return readSegment(segment, count);
+            }
+        });
+        Thread reader = new Thread(task, "SpillingIterable read-ahead");
+        reader.setDaemon(true);
+        reader.start();
+        return task;
+    }
+
+    /**
+     * Iterate over the elements added so far, in insertion order.
+     *
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<T> iterator() {
+        assertOpen();
+        final List<File> files = new ArrayList<File>(segments);
+        final List<Integer> counts = new ArrayList<Integer>(segmentSizes);
+        final List<T> inMemory = buffer;
+        final int inMemoryCount = buffer.size();
+
+        return new Iterator<T>() {
+            private int nextSegment = 0;
+            private Future<List<Object>> pending = files.isEmpty() ? null : readAhead(files.get(0), counts.get(0));
+            private List<?> current = Collections.emptyList();
+            private int position = 0;
+            private boolean inMemoryStarted = false;
+
+            private void advance() {
+                while (position >= current.size()) {
+                    if (pending != null) {
+                        current = await(pending);
+                        position = 0;
+                        ++nextSegment;
+                        pending = nextSegment < files.size()
+                                ? readAhead(files.get(nextSegment), counts.get(nextSegment))
+                                : null;
+                    } else if (!inMemoryStarted) {
+                        current = inMemory.subList(0, inMemoryCount);
+                        position = 0;
+                        inMemoryStarted = true;
+                    } else {
+                        return;
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                advance();
+                return position < current.size();
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return (T) current.get(position++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static List<Object> await(Future<List<Object>> pending) {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading spilled results", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not read spilled results", e.getCause());
+        }
+    }
+
+    private void assertOpen() {
+        if (closed) {
+            throw new IllegalStateException("SpillingIterable has been closed");
+        }
+    }
+
+    /**
+     * Delete this container's segment files.  Iterators created earlier may fail
+     * once the container is closed, and later calls to add() or iterator() throw
+     * IllegalStateException.
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() {
+        for (File segment : segments) {
+            segment.delete();
+        }
+        segments.clear();
+        segmentSizes.clear();
+        buffer = new ArrayList<T>();
+        size = 0;
+        closed = true;
+    }
+}
@@ -3,12 +3,18 @@ package com.coconut_palm_software.possible.iterable;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 
+import com.coconut_palm_software.possible.iterable.persistent.PersistentCollection;
+import com.coconut_palm_software.possible.iterable.persistent.TransientCollection;
+
 public class UnitFunction<T> {
 	private T result;
 	private Class<?> clazz;
 	private Method addMethod;
 	private Constructor<T> ctor;
+	@SuppressWarnings("rawtypes")
+	private TransientCollection transientResult;
 
+	@SuppressWarnings("rawtypes")
 	public UnitFunction(Class<T> clazz) {
 		this.clazz = clazz;
 		try {
@@ -16,6 +22,15 @@ public class UnitFunction<T> {
 		} catch (Exception e) {
 			throw new IllegalArgumentException("Class does not support a 0-arg constructor", e);
 		}
+		if (PersistentCollection.class.isAssignableFrom(clazz)) {
+			// Persistent collections are built in place using their transient
+			try {
+				transientResult = ((PersistentCollection) ctor.newInstance()).asTransient();
+			} catch (Exception e) {
+				throw new IllegalStateException("Unexpected: Could not construct: " + clazz.getName(), e);
+			}
+			return;
+		}
 		try {
 			addMethod = clazz.getMethod("add", Object.class);
 		} catch (Exception e) {
@@ -28,7 +43,34 @@ public class UnitFunction<T> {
 		}
 	}
 	
+	private UnitFunction(T instance, Method addMethod) {
+		this.clazz = instance.getClass();
+		this.addMethod = addMethod;
+		this.result = instance;
+	}
+
+	/**
+	 * Return a UnitFunction that adds to an existing container instead of
+	 * constructing a new one.
+	 *
+	 * @param instance The container to add to.
+	 * @param <T> The container type.
+	 * @return a UnitFunction whose result() is instance.
+	 */
+	public static <T> UnitFunction<T> addingTo(T instance) {
+		try {
+			return new UnitFunction<T>(instance, instance.getClass().getMethod("add", Object.class));
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Class does not support #add", e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
 	public void add(Object o) {
+		if (transientResult != null) {
+			transientResult.add(o);
+			return;
+		}
 		try {
 			addMethod.invoke(result, o);
 		} catch (Exception e) {
@@ -36,7 +78,12 @@ public class UnitFunction<T> {
 		}
 	}
 	
+	@SuppressWarnings("unchecked")
 	public T result() {
+		if (transientResult != null) {
+			result = (T) transientResult.persistent();
+			transientResult = null;
+		}
 		return result;
 	}
 }
@@ -0,0 +1,24 @@
+package com.coconut_palm_software.possible.iterable.persistent;
+
+/**
+ * An immutable collection whose updates return a new collection that shares
+ * most of its structure with the original.  Readers may hold on to any version
+ * without copying and without synchronization.
+ *
+ * @param <T> The element type
+ */
+public interface PersistentCollection<T> extends Iterable<T> {
+
+    /**
+     * @return the number of elements in this collection.
+     */
+    int size();
+
+    /**
+     * Return a mutable view that can be used to apply a batch of updates in
+     * place.  This collection is not affected by changes to the transient.
+     *
+     * @return a new TransientCollection initialized with this collection's contents.
+     */
+    TransientCollection<T> asTransient();
+}
@@ -0,0 +1,694 @@
+package com.coconut_palm_software.possible.iterable.persistent;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.coconut_palm_software.possible.Nulls;
+import com.coconut_palm_software.possible.Possible;
+
+/**
+ * An immutable hash map implemented as a hash array mapped trie (HAMT).  Each level
+ * of the trie consumes 5 bits of the key's hash code, so {@link #plus(Object, Object)}
+ * and {@link #minus(Object)} copy only the O(log32 n) nodes on the path to the
+ * changed entry; every other node is shared with the original map.
+ * <p>
+ * Keys and values may not be null; {@link #get(Object)} reports a missing key using
+ * {@link Possible#emptyValue()}.
+ * <p>
+ * Iterating a PersistentHashMap yields its entries.  Adding an entry to the
+ * {@link #asTransient()} builder is the same as putting its key and value, so maps
+ * can also be used as result containers by FluentIterable.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public final class PersistentHashMap<K, V> implements PersistentCollection<Map.Entry<K, V>> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /*
+     * A trie node.  Entries are stored as adjacent (key, value) pairs in 'array()'; a
+     * null key means the value slot holds a child Node.
+     */
+    interface Node {
+        Node assoc(Object edit, int shift, int hash, Object key, Object val, Box added);
+        Node without(Object edit, int shift, int hash, Object key, Box removed);
+        Object find(int shift, int hash, Object key);
+        Object[] array();
+    }
+
+    /* A mutable out-parameter used to report whether an update changed the size */
+    static final class Box {
+        boolean val;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashMap EMPTY = new PersistentHashMap();
+
+    private final int count;
+    private final Node root;
+
+    /**
+     * Construct an empty map.  Prefer {@link #empty()}, which shares a single
+     * instance.
+     */
+    public PersistentHashMap() {
+        this(0, null);
+    }
+
+    private PersistentHashMap(int count, Node root) {
+        this.count = count;
+        this.root = root;
+    }
+
+    /**
+     * @param <K> The key type.
+     * @param <V> The value type.
+     * @return the empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return EMPTY;
+    }
+
+    /* (non-Javadoc)
+     * @see com.coconut_palm_software.possible.iterable.persistent.PersistentCollection#size()
+     */
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return true if this map contains no entries.
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Return the value mapped to key, if any.
+     *
+     * @param key The key to look up.
+     * @return Possible.value(value) if key is mapped, otherwise Possible.emptyValue().
+     */
+    @SuppressWarnings("unchecked")
+    public Possible<V> get(Object key) {
+        Object result = find(root, key);
+        if (result == null) {
+            return Possible.emptyValue();
+        }
+        return Possible.value((V) result);
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return true if key is mapped to a value in this map.
+     */
+    public boolean containsKey(Object key) {
+        return find(root, key) != null;
+    }
+
+    /**
+     * Return a new map with key mapped to val.
+     *
+     * @param key The key.
+     * @param val The value.
+     * @return a new map with key mapped to val, or this map if the mapping already exists.
+     */
+    public PersistentHashMap<K, V> plus(K key, V val) {
+        Nulls.assertNotNull(key, "key");
+        Nulls.assertNotNull(val, "val");
+        Box added = new Box();
+        Node newRoot = (root == null ? BitmapIndexedNode.EMPTY : root)
+                .assoc(null, 0, hash(key), key, val, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<K, V>(added.val ? count + 1 : count, newRoot);
+    }
+
+    /**
+     * Return a new map without a mapping for key.
+     *
+     * @param key The key to remove.
+     * @return a new map without a mapping for key, or this map if key is not mapped.
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (root == null || key == null) {
+            return this;
+        }
+        Node newRoot = root.without(null, 0, hash(key), key, new Box());
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<K, V>(count - 1, newRoot);
+    }
+
+    /* (non-Javadoc)
+     * @see com.coconut_palm_software.possible.iterable.persistent.PersistentCollection#asTransient()
+     */
+    @Override
+    public Transient<K, V> asTransient() {
+        return new Transient<K, V>(this);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new NodeIterator<Map.Entry<K, V>>(root) {
+            @SuppressWarnings("unchecked")
+            @Override
+            protected Map.Entry<K, V> element(Object key, Object val) {
+                return new AbstractMap.SimpleImmutableEntry<K, V>((K) key, (V) val);
+            }
+        };
+    }
+
+    /**
+     * @return an Iterable over this map's keys.
+     */
+    public Iterable<K> keys() {
+        return new Iterable<K>() {
+            @Override
+            public Iterator<K> iterator() {
+                return new NodeIterator<K>(root) {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    protected K element(Object key, Object val) {
+                        return (K) key;
+                    }
+                };
+            }
+        };
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof PersistentHashMap)) {
+            return false;
+        }
+        PersistentHashMap<?, ?> other = (PersistentHashMap<?, ?>) obj;
+        if (other.count != count) {
+            return false;
+        }
+        for (Map.Entry<K, V> entry : this) {
+            if (!entry.getValue().equals(find(other.root, entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (Map.Entry<K, V> entry : this) {
+            hash += entry.hashCode();
+        }
+        return hash;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("{");
+        for (Map.Entry<K, V> entry : this) {
+            if (result.length() > 1) {
+                result.append(", ");
+            }
+            result.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return result.append('}').toString();
+    }
+
+    private static Object find(Node root, Object key) {
+        if (root == null || key == null) {
+            return null;
+        }
+        return root.find(0, hash(key), key);
+    }
+
+    /*
+     * Spread the hash code's high bits into the low bits consumed by the trie's
+     * first levels, as java.util.HashMap does.
+     */
+    static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bitpos(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static Node createNode(Object edit, int shift, Object key1, Object val1,
+            int key2hash, Object key2, Object val2)
+    {
+        int key1hash = hash(key1);
+        if (key1hash == key2hash) {
+            return new HashCollisionNode(edit, key1hash, 2, new Object[] {key1, val1, key2, val2});
+        }
+        Box added = new Box();
+        return BitmapIndexedNode.EMPTY
+                .assoc(edit, shift, key1hash, key1, val1, added)
+                .assoc(edit, shift, key2hash, key2, val2, added);
+    }
+
+    /*
+     * A node with up to 32 slots, of which only the occupied ones (per 'bitmap') are
+     * stored.  Transients over-allocate 'array' so that inserts can be done in place.
+     */
+    static final class BitmapIndexedNode implements Node {
+        static final BitmapIndexedNode EMPTY = new BitmapIndexedNode(null, 0, new Object[0]);
+
+        final Object edit;
+        int bitmap;
+        Object[] array;
+
+        BitmapIndexedNode(Object edit, int bitmap, Object[] array) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        public Object[] array() {
+            return array;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int idx = index(bit);
+            Object keyOrNull = array[2 * idx];
+            Object valOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                return ((Node) valOrNode).find(shift + BITS, hash, key);
+            }
+            if (key.equals(keyOrNull)) {
+                return valOrNode;
+            }
+            return null;
+        }
+
+        private BitmapIndexedNode ensureEditable(Object edit) {
+            if (edit != null && this.edit == edit) {
+                return this;
+            }
+            int n = Integer.bitCount(bitmap);
+            Object[] newArray = new Object[2 * (n + 1)];
+            System.arraycopy(array, 0, newArray, 0, 2 * n);
+            return new BitmapIndexedNode(edit, bitmap, newArray);
+        }
+
+        private BitmapIndexedNode editAndSet(Object edit, int i, Object a) {
+            BitmapIndexedNode editable = ensureEditable(edit);
+            editable.array[i] = a;
+            return editable;
+        }
+
+        private BitmapIndexedNode editAndSet(Object edit, int i, Object a, int j, Object b) {
+            BitmapIndexedNode editable = ensureEditable(edit);
+            editable.array[i] = a;
+            editable.array[j] = b;
+            return editable;
+        }
+
+        @Override
+        public Node assoc(Object edit, int shift, int hash, Object key, Object val, Box added) {
+            int bit = bitpos(hash, shift);
+            int idx = index(bit);
+            if ((bitmap & bit) != 0) {
+                Object keyOrNull = array[2 * idx];
+                Object valOrNode = array[2 * idx + 1];
+                if (keyOrNull == null) {
+                    Node n = ((Node) valOrNode).assoc(edit, shift + BITS, hash, key, val, added);
+                    if (n == valOrNode) {
+                        return this;
+                    }
+                    return editAndSet(edit, 2 * idx + 1, n);
+                }
+                if (key.equals(keyOrNull)) {
+                    if (val == valOrNode) {
+                        return this;
+                    }
+                    return editAndSet(edit, 2 * idx + 1, val);
+                }
+                added.val = true;
+                return editAndSet(edit, 2 * idx, null, 2 * idx + 1,
+                        createNode(edit, shift + BITS, keyOrNull, valOrNode, hash, key, val));
+            }
+
+            int n = Integer.bitCount(bitmap);
+            added.val = true;
+            if (edit != null && this.edit == edit && 2 * n < array.length) {
+                System.arraycopy(array, 2 * idx, array, 2 * (idx + 1), 2 * (n - idx));
+                array[2 * idx] = key;
+                array[2 * idx + 1] = val;
+                bitmap |= bit;
+                return this;
+            }
+            // Transients leave room to grow in place
+            Object[] newArray = new Object[2 * (n + (edit != null ? 4 : 1))];
+            System.arraycopy(array, 0, newArray, 0, 2 * idx);
+            newArray[2 * idx] = key;
+            newArray[2 * idx + 1] = val;
+            System.arraycopy(array, 2 * idx, newArray, 2 * (idx + 1), 2 * (n - idx));
+            return new BitmapIndexedNode(edit, bitmap | bit, newArray);
+        }
+
+        @Override
+        public Node without(Object edit, int shift, int hash, Object key, Box removed) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int idx = index(bit);
+            Object keyOrNull = array[2 * idx];
+            Object valOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                Node n = ((Node) valOrNode).without(edit, shift + BITS, hash, key, removed);
+                if (n == valOrNode) {
+                    return this;
+                }
+                if (n != null) {
+                    return editAndSet(edit, 2 * idx + 1, n);
+                }
+                if (bitmap == bit) {
+                    return null;
+                }
+                return editAndRemovePair(edit, bit, idx);
+            }
+            if (key.equals(keyOrNull)) {
+                removed.val = true;
+                if (bitmap == bit) {
+                    return null;
+                }
+                return editAndRemovePair(edit, bit, idx);
+            }
+            return this;
+        }
+
+        private Node editAndRemovePair(Object edit, int bit, int idx) {
+            int n = Integer.bitCount(bitmap);
+            if (edit != null && this.edit == edit) {
+                System.arraycopy(array, 2 * (idx + 1), array, 2 * idx, 2 * (n - idx - 1));
+                array[2 * n - 2] = null;
+                array[2 * n - 1] = null;
+                bitmap ^= bit;
+                return this;
+            }
+            Object[] newArray = new Object[2 * (n - 1)];
+            System.arraycopy(array, 0, newArray, 0, 2 * idx);
+            System.arraycopy(array, 2 * (idx + 1), newArray, 2 * idx, 2 * (n - idx - 1));
+            return new BitmapIndexedNode(edit, bitmap ^ bit, newArray);
+        }
+    }
+
+    /*
+     * A node holding entries whose keys have identical hash codes.
+     */
+    static final class HashCollisionNode implements Node {
+        final Object edit;
+        final int hash;
+        final int count;
+        final Object[] array;
+
+        HashCollisionNode(Object edit, int hash, int count, Object[] array) {
+            this.edit = edit;
+            this.hash = hash;
+            this.count = count;
+            this.array = array;
+        }
+
+        @Override
+        public Object[] array() {
+            return array;
+        }
+
+        private int findIndex(Object key) {
+            for (int i = 0; i < 2 * count; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int idx = findIndex(key);
+            return idx < 0 ? null : array[idx + 1];
+        }
+
+        @Override
+        public Node assoc(Object edit, int shift, int hash, Object key, Object val, Box added) {
+            if (hash == this.hash) {
+                int idx = findIndex(key);
+                if (idx != -1) {
+                    if (array[idx + 1] == val) {
+                        return this;
+                    }
+                    Object[] newArray = array.clone();
+                    newArray[idx + 1] = val;
+                    return new HashCollisionNode(edit, hash, count, newArray);
+                }
+                Object[] newArray = new Object[2 * (count + 1)];
+                System.arraycopy(array, 0, newArray, 0, 2 * count);
+                newArray[2 * count] = key;
+                newArray[2 * count + 1] = val;
+                added.val = true;
+                return new HashCollisionNode(edit, hash, count + 1, newArray);
+            }
+            // Nest this node in a bitmap node and retry
+            return new BitmapIndexedNode(edit, bitpos(this.hash, shift), new Object[] {null, this})
+                    .assoc(edit, shift, hash, key, val, added);
+        }
+
+        @Override
+        public Node without(Object edit, int shift, int hash, Object key, Box removed) {
+            int idx = findIndex(key);
+            if (idx == -1) {
+                return this;
+            }
+            removed.val = true;
+            if (count == 1) {
+                return null;
+            }
+            Object[] newArray = new Object[2 * (count - 1)];
+            System.arraycopy(array, 0, newArray, 0, idx);
+            System.arraycopy(array, idx + 2, newArray, idx, 2 * count - idx - 2);
+            return new HashCollisionNode(edit, hash, count - 1, newArray);
+        }
+    }
+
+    /*
+     * Depth-first traversal over the (key, value) pairs in a trie.
+     */
+    static abstract class NodeIterator<E> implements Iterator<E> {
+        private final List<Object[]> arrays = new ArrayList<Object[]>();
+        private final List<Integer> positions = new ArrayList<Integer>();
+        private Object nextKey = null;
+        private Object nextVal = null;
+
+        NodeIterator(Node root) {
+            if (root != null) {
+                arrays.add(root.array());
+                positions.add(0);
+            }
+            advance();
+        }
+
+        protected abstract E element(Object key, Object val);
+
+        private void advance() {
+            nextKey = null;
+            while (!arrays.isEmpty()) {
+                int top = arrays.size() - 1;
+                Object[] array = arrays.get(top);
+                int i = positions.get(top);
+                if (i >= array.length) {
+                    arrays.remove(top);
+                    positions.remove(top);
+                    continue;
+                }
+                positions.set(top, i + 2);
+                Object key = array[i];
+                Object val = array[i + 1];
+                if (key != null) {
+                    nextKey = key;
+                    nextVal = val;
+                    return;
+                }
+                if (val != null) {
+                    arrays.add(((Node) val).array());
+                    positions.add(0);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextKey != null;
+        }
+
+        @Override
+        public E next() {
+            if (nextKey == null) {
+                throw new NoSuchElementException();
+            }
+            E result = element(nextKey, nextVal);
+            advance();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A mutable, single-threaded builder for PersistentHashMap.  Nodes copied by the
+     * transient are owned by it and are updated in place by later operations.
+     *
+     * @param <K> The key type
+     * @param <V> The value type
+     */
+    public static final class Transient<K, V> implements TransientCollection<Map.Entry<K, V>> {
+        private Object edit = new Object();
+        private final Box leafFlag = new Box();
+        private int count;
+        private Node root;
+
+        private Transient(PersistentHashMap<K, V> source) {
+            count = source.count;
+            root = source.root;
+        }
+
+        private void ensureEditable() {
+            if (edit == null) {
+                throw new IllegalStateException("Transient used after persistent() call");
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see com.coconut_palm_software.possible.iterable.persistent.TransientCollection#size()
+         */
+        @Override
+        public int size() {
+            ensureEditable();
+            return count;
+        }
+
+        /**
+         * Return the value mapped to key, if any.
+         *
+         * @param key The key to look up.
+         * @return Possible.value(value) if key is mapped, otherwise Possible.emptyValue().
+         */
+        @SuppressWarnings("unchecked")
+        public Possible<V> get(Object key) {
+            ensureEditable();
+            Object result = find(root, key);
+            if (result == null) {
+                return Possible.emptyValue();
+            }
+            return Possible.value((V) result);
+        }
+
+        /**
+         * @param key The key to look up.
+         * @return true if key is mapped to a value.
+         */
+        public boolean containsKey(Object key) {
+            ensureEditable();
+            return find(root, key) != null;
+        }
+
+        /**
+         * Map key to val.
+         *
+         * @param key The key.
+         * @param val The value.
+         * @return this transient, to allow call chaining.
+         */
+        public Transient<K, V> put(K key, V val) {
+            ensureEditable();
+            Nulls.assertNotNull(key, "key");
+            Nulls.assertNotNull(val, "val");
+            leafFlag.val = false;
+            root = (root == null ? BitmapIndexedNode.EMPTY : root)
+                    .assoc(edit, 0, hash(key), key, val, leafFlag);
+            if (leafFlag.val) {
+                ++count;
+            }
+            return this;
+        }
+
+        /**
+         * Remove the mapping for key, if any.
+         *
+         * @param key The key to remove.
+         * @return this transient, to allow call chaining.
+         */
+        public Transient<K, V> remove(Object key) {
+            ensureEditable();
+            if (root == null || key == null) {
+                return this;
+            }
+            leafFlag.val = false;
+            root = root.without(edit, 0, hash(key), key, leafFlag);
+            if (leafFlag.val) {
+                --count;
+            }
+            return this;
+        }
+
+        /**
+         * Put entry's key and value.
+         *
+         * @see com.coconut_palm_software.possible.iterable.persistent.TransientCollection#add(java.lang.Object)
+         */
+        @Override
+        public Transient<K, V> add(Map.Entry<K, V> entry) {
+            return put(entry.getKey(), entry.getValue());
+        }
+
+        /* (non-Javadoc)
+         * @see com.coconut_palm_software.possible.iterable.persistent.TransientCollection#persistent()
+         */
+        @Override
+        public PersistentHashMap<K, V> persistent() {
+            ensureEditable();
+            edit = null;
+            return new PersistentHashMap<K, V>(count, root);
+        }
+    }
+}
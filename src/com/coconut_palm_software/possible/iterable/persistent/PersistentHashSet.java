@@ -0,0 +1,209 @@
+package com.coconut_palm_software.possible.iterable.persistent;
+
+import java.util.Iterator;
+
+import com.coconut_palm_software.possible.Nulls;
+
+/**
+ * An immutable hash set backed by a {@link PersistentHashMap}.  {@link #plus(Object)}
+ * and {@link #minus(Object)} copy only O(log32 n) trie nodes; the rest of the
+ * structure is shared with the original set.
+ * <p>
+ * Elements may not be null.
+ *
+ * @param <T> The element type
+ */
+public final class PersistentHashSet<T> implements PersistentCollection<T> {
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashSet EMPTY = new PersistentHashSet();
+
+    private final PersistentHashMap<T, T> impl;
+
+    /**
+     * Construct an empty set.  Prefer {@link #empty()}, which shares a single
+     * instance.
+     */
+    public PersistentHashSet() {
+        this(PersistentHashMap.<T, T>empty());
+    }
+
+    private PersistentHashSet(PersistentHashMap<T, T> impl) {
+        this.impl = impl;
+    }
+
+    /**
+     * @param <T> The element type.
+     * @return the empty set.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentHashSet<T> empty() {
+        return EMPTY;
+    }
+
+    /* (non-Javadoc)
+     * @see com.coconut_palm_software.possible.iterable.persistent.PersistentCollection#size()
+     */
+    @Override
+    public int size() {
+        return impl.size();
+    }
+
+    /**
+     * @return true if this set contains no elements.
+     */
+    public boolean isEmpty() {
+        return impl.isEmpty();
+    }
+
+    /**
+     * @param o The object to look up.
+     * @return true if this set contains o.
+     */
+    public boolean contains(Object o) {
+        return impl.containsKey(o);
+    }
+
+    /**
+     * Return a new set that also contains t.
+     *
+     * @param t The element to add.
+     * @return a new set that also contains t, or this set if t is already present.
+     */
+    public PersistentHashSet<T> plus(T t) {
+        Nulls.assertNotNull(t, "t");
+        if (impl.containsKey(t)) {
+            return this;
+        }
+        return new PersistentHashSet<T>(impl.plus(t, t));
+    }
+
+    /**
+     * Return a new set that does not contain o.
+     *
+     * @param o The element to remove.
+     * @return a new set that does not contain o, or this set if o is not present.
+     */
+    public PersistentHashSet<T> minus(Object o) {
+        PersistentHashMap<T, T> newImpl = impl.minus(o);
+        if (newImpl == impl) {
+            return this;
+        }
+        return new PersistentHashSet<T>(newImpl);
+    }
+
+    /* (non-Javadoc)
+     * @see com.coconut_palm_software.possible.iterable.persistent.PersistentCollection#asTransient()
+     */
+    @Override
+    public Transient<T> asTransient() {
+        return new Transient<T>(impl.asTransient());
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return impl.keys().iterator();
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof PersistentHashSet)) {
+            return false;
+        }
+        return impl.equals(((PersistentHashSet<?>) obj).impl);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (T element : this) {
+            hash += element.hashCode();
+        }
+        return hash;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("[");
+        for (T element : this) {
+            if (result.length() > 1) {
+                result.append(", ");
+            }
+            result.append(element);
+        }
+        return result.append(']').toString();
+    }
+
+    /**
+     * A mutable, single-threaded builder for PersistentHashSet.
+     *
+     * @param <T> The element type
+     */
+    public static final class Transient<T> implements TransientCollection<T> {
+        private final PersistentHashMap.Transient<T, T> impl;
+
+        private Transient(PersistentHashMap.Transient<T, T> impl) {
+            this.impl = impl;
+        }
+
+        /* (non-Javadoc)
+         * @see com.coconut_palm_software.possible.iterable.persistent.TransientCollection#size()
+         */
+        @Override
+        public int size() {
+            return impl.size();
+        }
+
+        /**
+         * @param o The object to look up.
+         * @return true if this set contains o.
+         */
+        public boolean contains(Object o) {
+            return impl.containsKey(o);
+        }
+
+        /* (non-Javadoc)
+         * @see com.coconut_palm_software.possible.iterable.persistent.TransientCollection#add(java.lang.Object)
+         */
+        @Override
+        public Transient<T> add(T t) {
+            Nulls.assertNotNull(t, "t");
+            impl.put(t, t);
+            return this;
+        }
+
+        /**
+         * Remove o from this set, if present.
+         *
+         * @param o The element to remove.
+         * @return this transient, to allow call chaining.
+         */
+        public Transient<T> remove(Object o) {
+            impl.remove(o);
+            return this;
+        }
+
+        /* (non-Javadoc)
+         * @see com.coconut_palm_software.possible.iterable.persistent.TransientCollection#persistent()
+         */
+        @Override
+        public PersistentHashSet<T> persistent() {
+            return new PersistentHashSet<T>(impl.persistent());
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.coconut_palm_software.possible.iterable.persistent;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable, indexed list implemented as a 32-way trie with a detached tail
+ * array.  {@link #plus(Object)}, {@link #set(int, Object)} and {@link #pop()} copy only
+ * the O(log32 n) nodes on the path to the changed element; every other node is
+ * shared with the original vector.
+ * <p>
+ * Use {@link #asTransient()} to apply a batch of updates without creating an
+ * intermediate vector per update.
+ *
+ * @param <T> The element type
+ */
+public final class PersistentVector<T> implements PersistentCollection<T> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final Object[] EMPTY_ARRAY = new Object[0];
+
+    /*
+     * A trie node.  'edit' identifies the transient that owns the node, if any.
+     * Only the owning transient may mutate the node's array in place.
+     */
+    static final class Node {
+        final Object edit;
+        final Object[] array;
+
+        Node(Object edit, Object[] array) {
+            this.edit = edit;
+            this.array = array;
+        }
+
+        Node(Object edit) {
+            this(edit, new Object[WIDTH]);
+        }
+    }
+
+    private static final Node EMPTY_NODE = new Node(null);
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentVector EMPTY = new PersistentVector();
+
+    private final int cnt;
+    private final int shift;
+    private final Node root;
+    private final Object[] tail;
+
+    /**
+     * Construct an empty vector.  Prefer {@link #empty()}, which shares a single
+     * instance.
+     */
+    public PersistentVector() {
+        this(0, BITS, EMPTY_NODE, EMPTY_ARRAY);
+    }
+
+    private PersistentVector(int cnt, int shift, Node root, Object[] tail) {
+        this.cnt = cnt;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * @param <T> The element type.
+     * @return the empty vector.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> empty() {
+        return EMPTY;
+    }
+
+    /* (non-Javadoc)
+     * @see com.coconut_palm_software.possible.iterable.persistent.PersistentCollection#size()
+     */
+    @Override
+    public int size() {
+        return cnt;
+    }
+
+    /**
+     * @return true if this vector contains no elements.
+     */
+    public boolean isEmpty() {
+        return cnt == 0;
+    }
+
+    private static int tailoff(int cnt) {
+        if (cnt < WIDTH) {
+            return 0;
+        }
+        return ((cnt - 1) >>> BITS) << BITS;
+    }
+
+    private static Object[] arrayFor(int i, int cnt, int shift, Node root, Object[] tail) {
+        if (i < 0 || i >= cnt) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + cnt);
+        }
+        if (i >= tailoff(cnt)) {
+            return tail;
+        }
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.array[(i >>> level) & MASK];
+        }
+        return node.array;
+    }
+
+    /**
+     * Return the element at index i.
+     *
+     * @param i The index.
+     * @return the element at index i.
+     * @throws IndexOutOfBoundsException if i is not in [0, size()).
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int i) {
+        return (T) arrayFor(i, cnt, shift, root, tail)[i & MASK];
+    }
+
+    /**
+     * Return a new vector with t appended.
+     *
+     * @param t The element to append.
+     * @return a new vector with t appended.
+     */
+    public PersistentVector<T> plus(T t) {
+        if (cnt - tailoff(cnt) < WIDTH) {
+            Object[] newTail = new Object[tail.length + 1];
+            System.arraycopy(tail, 0, newTail, 0, tail.length);
+            newTail[tail.length] = t;
+            return new PersistentVector<T>(cnt + 1, shift, root, newTail);
+        }
+
+        // The tail is full; push it into the trie
+        Node tailNode = new Node(null, tail);
+        Node newRoot;
+        int newShift = shift;
+        if ((cnt >>> BITS) > (1 << shift)) {
+            newRoot = new Node(null);
+            newRoot.array[0] = root;
+            newRoot.array[1] = newPath(null, shift, tailNode);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(null, cnt, shift, root, tailNode);
+        }
+        return new PersistentVector<T>(cnt + 1, newShift, newRoot, new Object[] {t});
+    }
+
+    /**
+     * Return a new vector with the element at index i replaced by t.  If i == size(),
+     * this is the same as {@link #plus(Object)}.
+     *
+     * @param i The index to replace.
+     * @param t The new element.
+     * @return a new vector with the element at index i replaced by t.
+     * @throws IndexOutOfBoundsException if i is not in [0, size()].
+     */
+    public PersistentVector<T> set(int i, T t) {
+        if (i >= 0 && i < cnt) {
+            if (i >= tailoff(cnt)) {
+                Object[] newTail = tail.clone();
+                newTail[i & MASK] = t;
+                return new PersistentVector<T>(cnt, shift, root, newTail);
+            }
+            return new PersistentVector<T>(cnt, shift, doSet(null, shift, root, i, t), tail);
+        }
+        if (i == cnt) {
+            return plus(t);
+        }
+        throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + cnt);
+    }
+
+    /**
+     * Return a new vector with the last element removed.
+     *
+     * @return a new vector with the last element removed.
+     * @throws IllegalStateException if this vector is empty.
+     */
+    public PersistentVector<T> pop() {
+        if (cnt == 0) {
+            throw new IllegalStateException("Cannot pop an empty vector");
+        }
+        if (cnt == 1) {
+            return empty();
+        }
+        if (cnt - tailoff(cnt) > 1) {
+            Object[] newTail = new Object[tail.length - 1];
+            System.arraycopy(tail, 0, newTail, 0, newTail.length);
+            return new PersistentVector<T>(cnt - 1, shift, root, newTail);
+        }
+
+        // The tail becomes empty; pull the rightmost leaf out of the trie
+        Object[] newTail = arrayFor(cnt - 2, cnt, shift, root, tail);
+        Node newRoot = popTail(shift, root);
+        int newShift = shift;
+        if (newRoot == null) {
+            newRoot = EMPTY_NODE;
+        }
+        if (shift > BITS && newRoot.array[1] == null) {
+            newRoot = (Node) newRoot.array[0];
+            newShift -= BITS;
+        }
+        return new PersistentVector<T>(cnt - 1, newShift, newRoot, newTail);
+    }
+
+    private Node popTail(int level, Node node) {
+        int subidx = ((cnt - 2) >>> level) & MASK;
+        if (level > BITS) {
+            Node newChild = popTail(level - BITS, (Node) node.array[subidx]);
+            if (newChild == null && subidx == 0) {
+                return null;
+            }
+            Node ret = new Node(null, node.array.clone());
+            ret.array[subidx] = newChild;
+            return ret;
+        }
+        if (subidx == 0) {
+            return null;
+        }
+        Node ret = new Node(null, node.array.clone());
+        ret.array[subidx] = null;
+        return ret;
+    }
+
+    /*
+     * Nodes owned by 'edit' are updated in place; all others are path-copied.  A null
+     * edit never matches, so persistent updates always copy.
+     */
+    private static Node editable(Object edit, Node node) {
+        if (edit != null && node.edit == edit) {
+            return node;
+        }
+        return new Node(edit, node.array.clone());
+    }
+
+    private static Node pushTail(Object edit, int cnt, int level, Node parent, Node tailNode) {
+        int subidx = ((cnt - 1) >>> level) & MASK;
+        Node ret = editable(edit, parent);
+        Node nodeToInsert;
+        if (level == BITS) {
+            nodeToInsert = tailNode;
+        } else {
+            Node child = (Node) parent.array[subidx];
+            nodeToInsert = (child != null)
+                    ? pushTail(edit, cnt, level - BITS, child, tailNode)
+                    : newPath(edit, level - BITS, tailNode);
+        }
+        ret.array[subidx] = nodeToInsert;
+        return ret;
+    }
+
+    private static Node newPath(Object edit, int level, Node node) {
+        if (level == 0) {
+            return node;
+        }
+        Node ret = new Node(edit);
+        ret.array[0] = newPath(edit, level - BITS, node);
+        return ret;
+    }
+
+    private static Node doSet(Object edit, int level, Node node, int i, Object val) {
+        Node ret = editable(edit, node);
+        if (level == 0) {
+            ret.array[i & MASK] = val;
+        } else {
+            int subidx = (i >>> level) & MASK;
+            ret.array[subidx] = doSet(edit, level - BITS, (Node) node.array[subidx], i, val);
+        }
+        return ret;
+    }
+
+    /* (non-Javadoc)
+     * @see com.coconut_palm_software.possible.iterable.persistent.PersistentCollection#asTransient()
+     */
+    @Override
+    public Transient<T> asTransient() {
+        return new Transient<T>(this);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int i = 0;
+            private Object[] array = null;
+
+            @Override
+            public boolean hasNext() {
+                return i < cnt;
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public T next() {
+                if (i >= cnt) {
+                    throw new NoSuchElementException();
+                }
+                if ((i & MASK) == 0 || array == null) {
+                    array = arrayFor(i, cnt, shift, root, tail);
+                }
+                return (T) array[i++ & MASK];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof PersistentVector)) {
+            return false;
+        }
+        PersistentVector<?> other = (PersistentVector<?>) obj;
+        if (other.cnt != cnt) {
+            return false;
+        }
+        Iterator<?> otherElements = other.iterator();
+        for (T element : this) {
+            Object otherElement = otherElements.next();
+            if (element == null ? otherElement != null : !element.equals(otherElement)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (T element : this) {
+            hash = 31 * hash + (element == null ? 0 : element.hashCode());
+        }
+        return hash;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("[");
+        for (T element : this) {
+            if (result.length() > 1) {
+                result.append(", ");
+            }
+            result.append(element);
+        }
+        return result.append(']').toString();
+    }
+
+    /**
+     * A mutable, single-threaded builder for PersistentVector.  Nodes copied by the
+     * transient are owned by it and are updated in place by later operations.
+     *
+     * @param <T> The element type
+     */
+    public static final class Transient<T> implements TransientCollection<T> {
+        private Object edit = new Object();
+        private int cnt;
+        private int shift;
+        private Node root;
+        private Object[] tail;
+
+        private Transient(PersistentVector<T> source) {
+            cnt = source.cnt;
+            shift = source.shift;
+            root = new Node(edit, source.root.array.clone());
+            tail = new Object[WIDTH];
+            System.arraycopy(source.tail, 0, tail, 0, source.tail.length);
+        }
+
+        private void ensureEditable() {
+            if (edit == null) {
+                throw new IllegalStateException("Transient used after persistent() call");
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see com.coconut_palm_software.possible.iterable.persistent.TransientCollection#size()
+         */
+        @Override
+        public int size() {
+            ensureEditable();
+            return cnt;
+        }
+
+        /**
+         * Return the element at index i.
+         *
+         * @param i The index.
+         * @return the element at index i.
+         * @throws IndexOutOfBoundsException if i is not in [0, size()).
+         */
+        @SuppressWarnings("unchecked")
+        public T get(int i) {
+            ensureEditable();
+            return (T) arrayFor(i, cnt, shift, root, tail)[i & MASK];
+        }
+
+        /* (non-Javadoc)
+         * @see com.coconut_palm_software.possible.iterable.persistent.TransientCollection#add(java.lang.Object)
+         */
+        @Override
+        public Transient<T> add(T t) {
+            ensureEditable();
+            if (cnt - tailoff(cnt) < WIDTH) {
+                tail[cnt & MASK] = t;
+                ++cnt;
+                return this;
+            }
+
+            Node tailNode = new Node(edit, tail);
+            tail = new Object[WIDTH];
+            tail[0] = t;
+            if ((cnt >>> BITS) > (1 << shift)) {
+                Node newRoot = new Node(edit);
+                newRoot.array[0] = root;
+                newRoot.array[1] = newPath(edit, shift, tailNode);
+                root = newRoot;
+                shift += BITS;
+            } else {
+                root = pushTail(edit, cnt, shift, root, tailNode);
+            }
+            ++cnt;
+            return this;
+        }
+
+        /**
+         * Replace the element at index i with t.  If i == size(), this is the same
+         * as {@link #add(Object)}.
+         *
+         * @param i The index to replace.
+         * @param t The new element.
+         * @return this transient, to allow call chaining.
+         * @throws IndexOutOfBoundsException if i is not in [0, size()].
+         */
+        public Transient<T> set(int i, T t) {
+            ensureEditable();
+            if (i >= 0 && i < cnt) {
+                if (i >= tailoff(cnt)) {
+                    tail[i & MASK] = t;
+                } else {
+                    root = doSet(edit, shift, root, i, t);
+                }
+                return this;
+            }
+            if (i == cnt) {
+                return add(t);
+            }
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + cnt);
+        }
+
+        /* (non-Javadoc)
+         * @see com.coconut_palm_software.possible.iterable.persistent.TransientCollection#persistent()
+         */
+        @Override
+        public PersistentVector<T> persistent() {
+            ensureEditable();
+            edit = null;
+            Object[] trimmedTail = new Object[cnt - tailoff(cnt)];
+            System.arraycopy(tail, 0, trimmedTail, 0, trimmedTail.length);
+            return new PersistentVector<T>(cnt, shift, root, trimmedTail);
+        }
+    }
+}
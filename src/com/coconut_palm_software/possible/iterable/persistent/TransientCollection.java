@@ -0,0 +1,35 @@
+package com.coconut_palm_software.possible.iterable.persistent;
+
+/**
+ * A single-threaded, mutable builder over a {@link PersistentCollection}.  Updates
+ * are applied in place to nodes owned by the transient, so a batch of n updates
+ * allocates far less than n persistent updates would.
+ * <p>
+ * Once {@link #persistent()} has been called the transient may no longer be used.
+ *
+ * @param <T> The element type
+ */
+public interface TransientCollection<T> {
+
+    /**
+     * Add t to this collection.
+     *
+     * @param t The element to add.
+     * @return this transient, to allow call chaining.
+     * @throws IllegalStateException if this transient has already been made persistent.
+     */
+    TransientCollection<T> add(T t);
+
+    /**
+     * @return the number of elements in this collection.
+     */
+    int size();
+
+    /**
+     * Freeze this transient, returning an immutable collection with its contents.
+     *
+     * @return the PersistentCollection containing this transient's contents.
+     * @throws IllegalStateException if this transient has already been made persistent.
+     */
+    PersistentCollection<T> persistent();
+}
@@ -0,0 +1,68 @@
+package com.coconut_palm_software.possible.iterable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FluentIterableTest {
+
+    private static final F<String, List<String>> SPLIT = new F<String, List<String>>() {
+        @Override
+        public List<String> apply(String line) {
+            return Arrays.asList(line.split(" "));
+        }
+    };
+
+    private static final F<String, List<String>> DUPLICATE = new F<String, List<String>>() {
+        @Override
+        public List<String> apply(String word) {
+            return Arrays.asList(word, word);
+        }
+    };
+
+    private static final F2<Integer, String, Integer> COUNT = new F2<Integer, String, Integer>() {
+        @Override
+        public Integer apply(Integer count, String word) {
+            return count + 1;
+        }
+    };
+
+    private static int sizeOf(Iterable<?> iterable) {
+        int size = 0;
+        for (Object element : iterable) {
+            ++size;
+        }
+        return size;
+    }
+
+    @Test
+    public void spilledStagesStayReadableAfterBranching() {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add("a" + i + " b" + i + " c" + i);
+        }
+        FluentIterable<String> words = FluentIterable.iterateOver(lines)
+                .withMemoryBudget(100)
+                .transformAndConcat(SPLIT);
+
+        FluentIterable<String> first = words.transformAndConcat(DUPLICATE);
+        FluentIterable<String> second = words.transformAndConcat(DUPLICATE);
+
+        assertEquals(3000, sizeOf(words.<Iterable<String>>result()));
+        assertEquals(6000, sizeOf(first.<Iterable<String>>result()));
+        assertEquals(6000, sizeOf(second.<Iterable<String>>result()));
+        assertEquals(Integer.valueOf(3000), words.reduce(COUNT, 0));
+
+        words.deleteSpilledResults();
+        try {
+            words.<Iterable<String>>result().iterator();
+            fail("A deleted spilled result must not read as empty");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
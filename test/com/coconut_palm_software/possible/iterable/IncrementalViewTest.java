@@ -0,0 +1,82 @@
+package com.coconut_palm_software.possible.iterable;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class IncrementalViewTest {
+
+    /* Equal by id alone, so equal records can carry different values */
+    private static final class Rec {
+        final String id;
+        final int value;
+
+        Rec(String id, int value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Rec && ((Rec) obj).id.equals(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+
+    private static final DoubleF<Rec> VALUE = new DoubleF<Rec>() {
+        @Override
+        public double apply(Rec rec) {
+            return rec.value;
+        }
+    };
+
+    private static final F<Rec, String> ID = new F<Rec, String>() {
+        @Override
+        public String apply(Rec rec) {
+            return rec.id;
+        }
+    };
+
+    private static List<Integer> valuesOf(Iterable<Rec> recs) {
+        List<Integer> values = new ArrayList<Integer>();
+        for (Rec rec : recs) {
+            values.add(rec.value);
+        }
+        return values;
+    }
+
+    @Test
+    public void lateAggregatesReplayTheInsertedInstances() {
+        Rec ten = new Rec("a", 10);
+        IncrementalView<Rec, Rec> view = IncrementalView.incrementalOver(Collections.<Rec>emptyList());
+        view.insert(new Rec("a", 1)).insert(ten);
+
+        IncrementalView.Aggregate<Double> sum = view.sum(VALUE);
+        IncrementalView.Aggregate<Map<String, Collection<Rec>>> groups = view.groupBy(ID);
+        assertEquals(11.0, sum.value(), 0.0);
+        assertEquals(Arrays.asList(1, 10), valuesOf(view));
+        assertEquals(Arrays.asList(1, 10), valuesOf(groups.value().get("a")));
+
+        view.remove(ten);
+        assertEquals(1.0, sum.value(), 0.0);
+        assertEquals(Arrays.asList(1), valuesOf(view));
+        assertEquals(Arrays.asList(1), valuesOf(groups.value().get("a")));
+
+        // An equal but different instance removes the earliest inserted one
+        view.insert(ten).remove(new Rec("a", 99));
+        assertEquals(10.0, sum.value(), 0.0);
+        assertEquals(Arrays.asList(10), valuesOf(view));
+        assertEquals(Arrays.asList(10), valuesOf(groups.value().get("a")));
+    }
+}
@@ -0,0 +1,96 @@
+package com.coconut_palm_software.possible.iterable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.coconut_palm_software.possible.Possible;
+
+/*
+ * Checks whichever kernels PrimitiveArrays loaded against the scalar loops.  Run with
+ * --add-modules jdk.incubator.vector to cover the Vector API implementation.
+ */
+public class PrimitiveArraysTest {
+
+    private static final ScalarKernels SCALAR = new ScalarKernels();
+
+    // Lengths around typical vector widths, so both the vector loop and the tail run
+    private static final int[] LENGTHS = { 1, 2, 3, 7, 8, 15, 16, 17, 31, 64, 100, 1027 };
+
+    @Test
+    public void intsMatchTheScalarLoops() {
+        Random random = new Random(1);
+        for (int length : LENGTHS) {
+            int[] a = new int[length];
+            for (int i = 0; i < length; i++) {
+                a[i] = random.nextInt();
+            }
+            assertEquals(SCALAR.sum(a), PrimitiveArrays.sum(a));
+            assertEquals(Possible.value(SCALAR.min(a)), PrimitiveArrays.min(a));
+            assertEquals(Possible.value(SCALAR.max(a)), PrimitiveArrays.max(a));
+            int last = a[length - 1];
+            assertEquals(Possible.value(SCALAR.firstIndexOf(a, last)), PrimitiveArrays.firstIndexOf(a, last));
+        }
+        int[] max = { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE };
+        assertEquals(8L * Integer.MAX_VALUE, PrimitiveArrays.sum(max));
+    }
+
+    @Test
+    public void longsMatchTheScalarLoops() {
+        Random random = new Random(2);
+        for (int length : LENGTHS) {
+            long[] a = new long[length];
+            for (int i = 0; i < length; i++) {
+                a[i] = random.nextLong();
+            }
+            assertEquals(SCALAR.sum(a), PrimitiveArrays.sum(a));
+            assertEquals(Possible.value(SCALAR.min(a)), PrimitiveArrays.min(a));
+            assertEquals(Possible.value(SCALAR.max(a)), PrimitiveArrays.max(a));
+            long last = a[length - 1];
+            assertEquals(Possible.value(SCALAR.firstIndexOf(a, last)), PrimitiveArrays.firstIndexOf(a, last));
+        }
+    }
+
+    @Test
+    public void doublesMatchTheScalarLoops() {
+        Random random = new Random(3);
+        for (int length : LENGTHS) {
+            double[] a = new double[length];
+            for (int i = 0; i < length; i++) {
+                a[i] = random.nextDouble() - 0.5;
+            }
+            assertEquals(SCALAR.sum(a), PrimitiveArrays.sum(a), 1e-9);
+            assertEquals(Possible.value(SCALAR.min(a)), PrimitiveArrays.min(a));
+            assertEquals(Possible.value(SCALAR.max(a)), PrimitiveArrays.max(a));
+            double last = a[length - 1];
+            assertEquals(Possible.value(SCALAR.firstIndexOf(a, last)), PrimitiveArrays.firstIndexOf(a, last));
+        }
+    }
+
+    @Test
+    public void doublesFollowMathAndDoubleCompare() {
+        double[] a = new double[40];
+        a[20] = -0.0;
+        a[30] = Double.NaN;
+        assertEquals(Possible.value(Double.NaN), PrimitiveArrays.min(a));
+        assertEquals(Possible.value(Double.NaN), PrimitiveArrays.max(a));
+        assertEquals(Possible.value(20), PrimitiveArrays.firstIndexOf(a, -0.0));
+        assertEquals(Possible.value(0), PrimitiveArrays.firstIndexOf(a, 0.0));
+        assertEquals(Possible.value(30), PrimitiveArrays.firstIndexOf(a, Double.NaN));
+        a[30] = 0.0;
+        assertEquals(Possible.value(-0.0), PrimitiveArrays.min(a));
+    }
+
+    @Test
+    public void emptyArraysHaveNoResult() {
+        assertEquals(0L, PrimitiveArrays.sum(new int[0]));
+        assertTrue(PrimitiveArrays.min(new long[0]).isEmpty());
+        assertTrue(PrimitiveArrays.max(new double[0]).isEmpty());
+        assertFalse(PrimitiveArrays.firstIndexOf(new int[0], 0).hasValue());
+    }
+}